@@ -0,0 +1,176 @@
+package javax.servlet.filter.logging.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.filter.logging.LoggingFilter;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link LoggingFilter#doFilter} around a chain which reads the whole request body and writes a response body
+ * of the same size. Run with {@code java -jar target/benchmarks.jar -prof gc} to get allocations per operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggingFilterBenchmark {
+
+	private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+	private static final String JSON_CONTENT_TYPE = "application/json";
+
+	private static final String LOGGED_PATH = "/api/orders";
+
+	private static final String EXCLUDED_PATH = "/health/live";
+
+	@Param({"0", "1024", "65536", "10485760"})
+	private int bodySize;
+
+	@Param({"0", "8", "32"})
+	private int headerCount;
+
+	@Param({"JSON", "FORM"})
+	private String bodyType;
+
+	@Param({"LOGGED", "EXCLUDED"})
+	private String path;
+
+	@Param({"DEBUG", "TRACE"})
+	private String level;
+
+	private LoggingFilter loggingFilter;
+
+	private byte[] body;
+
+	private Level previousLevel;
+
+	private final FilterChain echoChain = LoggingFilterBenchmark::echo;
+
+	private MockHttpServletRequest request;
+
+	private DiscardingResponse response;
+
+	@Setup
+	public void setUp() {
+		Logger logger = (Logger) LoggerFactory.getLogger(LoggingFilter.class);
+		previousLevel = logger.getLevel();
+		logger.setLevel(Level.toLevel(level));
+
+		loggingFilter = LoggingFilter.Builder.create()
+				.excludedPaths("/health/*")
+				.build();
+
+		body = new byte[bodySize];
+		Arrays.fill(body, (byte) 'a');
+		for (int i = 1; i < bodySize; i += 16) {
+			body[i] = (byte) ("FORM".equals(bodyType) ? '&' : ' ');
+		}
+	}
+
+	/**
+	 * Builds the mock request and response outside of the measured code, so the numbers are those of the filter and not
+	 * of the Spring mocks.
+	 */
+	@Setup(org.openjdk.jmh.annotations.Level.Invocation)
+	public void setUpExchange() {
+		request = new MockHttpServletRequest("POST", "LOGGED".equals(path) ? LOGGED_PATH : EXCLUDED_PATH);
+		request.setContentType("FORM".equals(bodyType) ? FORM_CONTENT_TYPE : JSON_CONTENT_TYPE);
+		request.setContent(body);
+		for (int i = 0; i < headerCount; i++) {
+			request.addHeader("X-Header-" + i, "value-" + i);
+		}
+		if ("FORM".equals(bodyType)) {
+			request.addParameter("name", "value");
+		}
+		response = new DiscardingResponse();
+	}
+
+	@TearDown
+	public void tearDown() {
+		loggingFilter.destroy();
+		((Logger) LoggerFactory.getLogger(LoggingFilter.class)).setLevel(previousLevel);
+	}
+
+	@Benchmark
+	public void doFilter(Blackhole blackhole) throws IOException, ServletException {
+		loggingFilter.doFilter(request, response, echoChain);
+		blackhole.consume(response.written);
+	}
+
+	private static void echo(ServletRequest request, ServletResponse response) throws IOException {
+		ServletInputStream inputStream = request.getInputStream();
+		ServletOutputStream outputStream = response.getOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, read);
+		}
+	}
+
+	private static class DiscardingResponse extends HttpServletResponseWrapper {
+
+		private final ServletOutputStream outputStream;
+
+		private long written;
+
+		private DiscardingResponse() {
+			super(new MockHttpServletResponse());
+			this.outputStream = new ServletOutputStream() {
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setWriteListener(WriteListener writeListener) {
+					// not used
+				}
+
+				@Override
+				public void write(int b) {
+					written++;
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+					written += len;
+				}
+			};
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return outputStream;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package javax.servlet.filter.logging;
+
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import javax.servlet.filter.logging.digest.BodyDigest;
+import javax.servlet.filter.logging.governor.CaptureLevel;
+import javax.servlet.filter.logging.json.ExchangeJsonEncoder;
+import javax.servlet.filter.logging.matcher.ContentTypeMatcher;
+import javax.servlet.filter.logging.matcher.HeaderMatcher;
+import javax.servlet.filter.logging.matcher.PathMatcher;
+import javax.servlet.filter.logging.redaction.RedactionRules;
+import javax.servlet.filter.logging.sampling.RequestSampler;
+import javax.servlet.filter.logging.wrapper.SpillPolicy;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Immutable snapshot of every setting that can be changed while the filter is running. A request reads the snapshot
+ * once and uses it until the exchange is logged, so a swap never mixes old and new settings within one exchange.
+ */
+final class LoggingConfig {
+
+	private static final Marker FLIGHT_RECORDER_MARKER = MarkerFactory.getMarker("FLIGHT_RECORDER");
+
+	static final Set<String> PARAMETERS = unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+			"maxContentSize", "includedPaths", "excludedPaths", "capturedContentTypes", "skippedContentTypes",
+			"includedHeaders", "excludedHeaders", "redactedHeaders", "redactedParams", "redactedJsonFields",
+			"sampleRate", "sampleLimit", "sampleRouteLimits", "tailRetention", "tailSlowThreshold", "tailErrorStatus",
+			"tailSummary", "requestPrefix", "responsePrefix", "requestMarker", "responseMarker", "disablePrefix",
+			"disableMarker", "captureLevel", "aggregatedPaths", "combinedExchange", "exchangePrefix", "exchangeMarker",
+			"spillThreshold", "spillDirectory", "bodyDigest", "maxCapturedContentLength")));
+
+	private final int maxContentSize;
+
+	private final PathMatcher<String> includedPaths;
+
+	private final PathMatcher<String> excludedPaths;
+
+	private final PathMatcher<String> aggregatedPaths;
+
+	private final ContentTypeMatcher capturedContentTypes;
+
+	private final HeaderMatcher headerMatcher;
+
+	private final RedactionRules redactionRules;
+
+	private final ExchangeJsonEncoder jsonEncoder;
+
+	private final RequestSampler sampler;
+
+	private final boolean tailRetention;
+
+	private final long tailSlowThresholdNanos;
+
+	private final int tailErrorStatus;
+
+	private final boolean tailSummary;
+
+	private final String requestPrefix;
+
+	private final String responsePrefix;
+
+	private final Marker requestMarker;
+
+	private final Marker responseMarker;
+
+	private final boolean combinedExchange;
+
+	private final String exchangePrefix;
+
+	private final Marker exchangeMarker;
+
+	private final String flightRecorderPrefix;
+
+	private final Marker flightRecorderMarker;
+
+	private final CaptureLevel captureLevel;
+
+	private final SpillPolicy spillPolicy;
+
+	private final Supplier<BodyDigest> bodyDigest;
+
+	LoggingConfig(LoggingFilter.Builder builder) {
+		this(builder, null);
+	}
+
+	/**
+	 * Takes over the state of the previous snapshot where its settings did not change, such as the sampling buckets.
+	 */
+	LoggingConfig(LoggingFilter.Builder builder, LoggingConfig previous) {
+		this.maxContentSize = builder.maxContentSize;
+		this.includedPaths = PathMatcher.compile(builder.includedPaths);
+		this.excludedPaths = PathMatcher.compile(builder.excludedPaths);
+		this.aggregatedPaths = PathMatcher.compile(builder.aggregatedPaths);
+		this.capturedContentTypes = ContentTypeMatcher.compile(builder.capturedContentTypes, builder.skippedContentTypes,
+				builder.maxCapturedContentLength);
+		this.headerMatcher = HeaderMatcher.compile(builder.includedHeaders, builder.excludedHeaders);
+		this.redactionRules = RedactionRules.compile(builder.redactedHeaders, builder.redactedParams, builder.redactedJsonFields);
+		this.jsonEncoder = new ExchangeJsonEncoder(redactionRules, headerMatcher);
+		this.sampler = RequestSampler.create(builder.sampleRate, builder.sampleLimit, builder.sampleRouteLimits,
+				previous != null ? previous.sampler : null);
+		this.tailRetention = builder.tailRetention;
+		this.tailSlowThresholdNanos = builder.tailSlowThresholdNanos;
+		this.tailErrorStatus = builder.tailErrorStatus;
+		this.tailSummary = builder.tailSummary;
+		this.requestPrefix = builder.disablePrefix ? "" : builder.requestPrefix;
+		this.responsePrefix = builder.disablePrefix ? "" : builder.responsePrefix;
+		this.requestMarker = builder.disableMarker ? null : builder.requestMarker;
+		this.responseMarker = builder.disableMarker ? null : builder.responseMarker;
+		this.combinedExchange = builder.combinedExchange;
+		this.exchangePrefix = builder.disablePrefix ? "" : builder.exchangePrefix;
+		this.exchangeMarker = builder.disableMarker ? null : builder.exchangeMarker;
+		this.flightRecorderPrefix = builder.disablePrefix ? "" : FLIGHT_RECORDER_MARKER.getName() + ": ";
+		this.flightRecorderMarker = builder.disableMarker ? null : FLIGHT_RECORDER_MARKER;
+		this.captureLevel = builder.captureLevel;
+		this.spillPolicy = SpillPolicy.of(builder.spillThreshold, builder.spillDirectory);
+		this.bodyDigest = builder.bodyDigest != null ? BodyDigest.factory(builder.bodyDigest) : null;
+	}
+
+	boolean isLoggedPath(String requestURI) {
+		if (!includedPaths.isEmpty() && !includedPaths.matches(requestURI)) {
+			return false;
+		}
+		return !excludedPaths.matches(requestURI);
+	}
+
+	/**
+	 * Returns the aggregated path pattern matching the request URI, {@code null} when the request is logged one by one.
+	 */
+	String getAggregatedRoute(String requestURI) {
+		return aggregatedPaths.match(requestURI);
+	}
+
+	boolean isRetained(int status, long durationNanos, boolean failed) {
+		return !tailRetention || failed || status >= tailErrorStatus || (tailSlowThresholdNanos > 0 && durationNanos >= tailSlowThresholdNanos);
+	}
+
+	int getMaxContentSize() {
+		return maxContentSize;
+	}
+
+	ContentTypeMatcher getCapturedContentTypes() {
+		return capturedContentTypes;
+	}
+
+	HeaderMatcher getHeaderMatcher() {
+		return headerMatcher;
+	}
+
+	RedactionRules getRedactionRules() {
+		return redactionRules;
+	}
+
+	ExchangeJsonEncoder getJsonEncoder() {
+		return jsonEncoder;
+	}
+
+	RequestSampler getSampler() {
+		return sampler;
+	}
+
+	boolean isTailSummary() {
+		return tailSummary;
+	}
+
+	/**
+	 * Returns the request prefix, empty when prefixes are disabled.
+	 */
+	String getRequestPrefix() {
+		return requestPrefix;
+	}
+
+	String getResponsePrefix() {
+		return responsePrefix;
+	}
+
+	/**
+	 * Returns the request marker, {@code null} when markers are disabled.
+	 */
+	Marker getRequestMarker() {
+		return requestMarker;
+	}
+
+	Marker getResponseMarker() {
+		return responseMarker;
+	}
+
+	/**
+	 * Returns whether a request and its response are logged as one exchange record.
+	 */
+	boolean isCombinedExchange() {
+		return combinedExchange;
+	}
+
+	String getExchangePrefix() {
+		return exchangePrefix;
+	}
+
+	Marker getExchangeMarker() {
+		return exchangeMarker;
+	}
+
+	String getFlightRecorderPrefix() {
+		return flightRecorderPrefix;
+	}
+
+	Marker getFlightRecorderMarker() {
+		return flightRecorderMarker;
+	}
+
+	CaptureLevel getCaptureLevel() {
+		return captureLevel;
+	}
+
+	SpillPolicy getSpillPolicy() {
+		return spillPolicy;
+	}
+
+	/**
+	 * Returns the factory of body digests, {@code null} when bodies are not digested.
+	 */
+	Supplier<BodyDigest> getBodyDigest() {
+		return bodyDigest;
+	}
+}
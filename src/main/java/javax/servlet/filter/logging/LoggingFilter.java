@@ -1,30 +1,70 @@
 package javax.servlet.filter.logging;
 
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.filter.logging.aggregation.ExchangeAggregate;
+import javax.servlet.filter.logging.aggregation.ExchangeAggregator;
+import javax.servlet.filter.logging.async.AsyncLogDispatcher;
+import javax.servlet.filter.logging.async.OverflowPolicy;
+import javax.servlet.filter.logging.binary.BinaryExchangeLog;
+import javax.servlet.filter.logging.control.FilterControl;
+import javax.servlet.filter.logging.digest.BodyDigest;
+import javax.servlet.filter.logging.entity.LoggingExchange;
 import javax.servlet.filter.logging.entity.LoggingRequest;
 import javax.servlet.filter.logging.entity.LoggingResponse;
+import javax.servlet.filter.logging.governor.CaptureLevel;
+import javax.servlet.filter.logging.governor.OverloadGovernor;
+import javax.servlet.filter.logging.matcher.ContentTypeMatcher;
+import javax.servlet.filter.logging.metrics.FilterMetrics;
+import javax.servlet.filter.logging.recorder.FlightRecorder;
+import javax.servlet.filter.logging.recorder.RecordedExchange;
+import javax.servlet.filter.logging.redaction.RedactionRules;
+import javax.servlet.filter.logging.wrapper.CaptureBufferPool;
 import javax.servlet.filter.logging.wrapper.LoggingHttpServletRequestWrapper;
 import javax.servlet.filter.logging.wrapper.LoggingHttpServletResponseWrapper;
+import javax.servlet.filter.logging.wrapper.SpillPolicy;
+import javax.servlet.http.HttpServletMapping;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toSet;
@@ -33,29 +73,66 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 public class LoggingFilter implements Filter {
 
-	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	private static final String UNMAPPED_ROUTE = "[UNMAPPED]";
+
+	private static final String REQUEST_ID_HEADER = "X-Request-ID";
+
+	private static final int SPILLED_PART_SIZE = 64 * 1024;
+
+	private static final String EXCHANGE_STATE_ATTRIBUTE = LoggingFilter.class.getName() + ".EXCHANGE_STATE";
 
 	private Logger log = getLogger(getClass());
 
-	private int maxContentSize;
+	private final Builder settings;
 
-	private Set<String> excludedPaths;
+	private volatile LoggingConfig config;
 
-	private String requestPrefix;
+	private Map<String, String> fileParameters = emptyMap();
 
-	private String responsePrefix;
+	private Map<String, String> overrides = emptyMap();
 
-	private Marker requestMarker;
+	private Path configFile;
 
-	private Marker responseMarker;
+	private FileTime configFileModified;
 
-	private boolean disableMarker;
+	private ScheduledExecutorService configFileWatcher;
 
-	private boolean disablePrefix;
+	private CaptureBufferPool bufferPool;
 
-	static {
-		OBJECT_MAPPER.setSerializationInclusion(Include.NON_EMPTY);
-	}
+	private volatile AsyncLogDispatcher asyncLogDispatcher;
+
+	private volatile FilterMetrics metrics;
+
+	private volatile BinaryExchangeLog binaryLog;
+
+	private volatile OverloadGovernor governor;
+
+	private volatile FilterControl control;
+
+	private volatile ExchangeAggregator aggregator;
+
+	private volatile FlightRecorder<RecordedExchange> flightRecorder;
+
+	private final String exchangeIdPrefix = Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36) + "-";
+
+	private final AtomicLong exchangeSequence = new AtomicLong();
+
+	private final boolean requestFactoryCustomized = isOverridden("createLoggingRequest", LoggingHttpServletRequestWrapper.class);
+
+	private final boolean responseFactoryCustomized = isOverridden("createLoggingResponse", LoggingHttpServletResponseWrapper.class);
+
+	private final boolean requestEntityCustomized = requestFactoryCustomized || isOverridden("getRequestDescription", LoggingRequest.class);
+
+	private final boolean responseEntityCustomized = responseFactoryCustomized || isOverridden("getResponseDescription", LoggingResponse.class);
+
+	private final boolean wrapperDescriptionCustomized = isOverridden("getRequestDescription", LoggingHttpServletRequestWrapper.class)
+			|| isOverridden("getResponseDescription", LoggingHttpServletResponseWrapper.class);
+
+	private final boolean requestDescriptionCustomized = requestEntityCustomized
+			|| isOverridden("getRequestDescription", LoggingHttpServletRequestWrapper.class);
+
+	private final boolean responseDescriptionCustomized = responseEntityCustomized
+			|| isOverridden("getResponseDescription", LoggingHttpServletResponseWrapper.class);
 
 	public LoggingFilter() {
 		this(Builder.create());
@@ -67,14 +144,9 @@ public class LoggingFilter implements Filter {
 		if (isNotBlank(builder.loggerName)) {
 			this.log = getLogger(builder.loggerName);
 		}
-		this.maxContentSize = builder.maxContentSize;
-		this.excludedPaths = builder.excludedPaths;
-		this.requestPrefix = builder.requestPrefix;
-		this.responsePrefix = builder.responsePrefix;
-		this.requestMarker = builder.requestMarker;
-		this.responseMarker = builder.responseMarker;
-		this.disableMarker = builder.disableMarker;
-		this.disablePrefix = builder.disablePrefix;
+		this.settings = builder.copy();
+		this.config = new LoggingConfig(settings);
+		openResources(settings);
 	}
 
 	@Override
@@ -85,207 +157,1652 @@ public class LoggingFilter implements Filter {
 			this.log = getLogger(getClass());
 		}
 
-		String maxContentSizeParam = filterConfig.getInitParameter("maxContentSize");
-		if (maxContentSizeParam != null) {
-			this.maxContentSize = Integer.parseInt(maxContentSizeParam);
+		synchronized (this) {
+			settings.parameters(filterConfig::getInitParameter);
+			settings.resources(filterConfig::getInitParameter, filterConfig.getFilterName());
+			this.config = createConfig(fileParameters, overrides);
+			closeResources();
+			openResources(settings);
 		}
+	}
 
-		String excludedPathsParam = filterConfig.getInitParameter("excludedPaths");
-		if (isNotBlank(excludedPathsParam)) {
-			String[] paths = excludedPathsParam.split("\\s*,\\s*");
-			this.excludedPaths = new HashSet<>(asList(paths));
+	@Override
+	@SuppressWarnings({"squid:S3457", "squid:S2629"})
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) throws IOException, ServletException {
+		if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+			throw new ServletException("LoggingFilter just supports HTTP requests");
 		}
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
 
-		String requestPrefixParam = filterConfig.getInitParameter("requestPrefix");
-		if (isNotBlank(requestPrefixParam)) {
-			this.requestPrefix = requestPrefixParam;
+		if (httpRequest.getDispatcherType() != DispatcherType.REQUEST && isNestedDispatch(httpRequest)) {
+			filterChain.doFilter(httpRequest, httpResponse);
+			return;
 		}
-
-		String responsePrefixParam = filterConfig.getInitParameter("responsePrefix");
-		if (isNotBlank(responsePrefixParam)) {
-			this.responsePrefix = responsePrefixParam;
+		boolean debugEnabled = log.isDebugEnabled();
+		if (!debugEnabled && flightRecorder == null) {
+			if (metrics != null) {
+				httpRequest.setAttribute(EXCHANGE_STATE_ATTRIBUTE, ExchangeState.SKIPPED);
+			}
+			proceed(httpRequest, httpResponse, filterChain);
+			return;
+		}
+		httpRequest.setAttribute(EXCHANGE_STATE_ATTRIBUTE, ExchangeState.SKIPPED);
+		LoggingConfig current = config;
+		CaptureLevel level = getCaptureLevel(current);
+		String requestURI = httpRequest.getRequestURI();
+		if (level == CaptureLevel.OFF || !current.isLoggedPath(requestURI)) {
+			proceed(httpRequest, httpResponse, filterChain);
+			return;
+		}
+		String aggregatedRoute = current.getAggregatedRoute(requestURI);
+		if (aggregatedRoute != null && debugEnabled) {
+			summarize(current, httpRequest, httpResponse, filterChain, aggregatedRoute);
+			return;
+		}
+		boolean logged = debugEnabled && current.getSampler().sample(requestURI, getRoute(httpRequest));
+		if (level == CaptureLevel.SUMMARY && logged) {
+			summarize(current, httpRequest, httpResponse, filterChain, null);
+			return;
+		}
+		if (aggregatedRoute != null || level == CaptureLevel.SUMMARY || !logged && flightRecorder == null) {
+			proceed(httpRequest, httpResponse, filterChain);
+			return;
 		}
 
-		String requestMarkerParam = filterConfig.getInitParameter("requestMarker");
-		if (isNotBlank(requestMarkerParam)) {
-			this.requestMarker = MarkerFactory.getMarker(requestMarkerParam);
+		long setupStartNanos = System.nanoTime();
+		int captureLimit = getCaptureLimit(current, level);
+		ContentTypeMatcher capturedContentTypes = current.getCapturedContentTypes();
+		SpillPolicy spillPolicy = current.getSpillPolicy();
+		httpRequest.setAttribute(EXCHANGE_STATE_ATTRIBUTE, ExchangeState.ACTIVE);
+		LoggingHttpServletRequestWrapper requestWrapper = new LoggingHttpServletRequestWrapper(httpRequest, captureLimit, bufferPool,
+				capturedContentTypes, spillPolicy, current.getBodyDigest());
+		LoggingHttpServletResponseWrapper responseWrapper = new LoggingHttpServletResponseWrapper(httpResponse, captureLimit, bufferPool,
+				capturedContentTypes, spillPolicy, current.getBodyDigest());
+		requestWrapper.bindResponse(responseWrapper);
+
+		long startNanos = System.nanoTime();
+		long setupNanos = startNanos - setupStartNanos;
+		try {
+			filterChain.doFilter(requestWrapper, responseWrapper);
+		} catch (IOException | ServletException | RuntimeException e) {
+			try {
+				finishExchange(current, requestWrapper, responseWrapper, logged, startNanos, setupNanos, true);
+			} catch (RuntimeException loggingException) {
+				e.addSuppressed(loggingException);
+			}
+			throw e;
 		}
 
-		String responseMarkerParam = filterConfig.getInitParameter("responseMarker");
-		if (isNotBlank(responseMarkerParam)) {
-			this.responseMarker = MarkerFactory.getMarker(responseMarkerParam);
+		if (requestWrapper.isAsyncStarted()) {
+			requestWrapper.getAsyncContext().addListener(new LoggingAsyncListener(
+					failed -> finishExchange(current, requestWrapper, responseWrapper, logged, startNanos, setupNanos, failed)));
+			return;
 		}
+		finishExchange(current, requestWrapper, responseWrapper, logged, startNanos, setupNanos, false);
+	}
+
+	/**
+	 * Returns whether a FORWARD, INCLUDE, ASYNC or ERROR dispatch of a request this filter has already seen passes
+	 * through untouched. The outer wrappers keep capturing what the nested dispatch reads and writes, so nothing is
+	 * wrapped, buffered or logged twice, and a request which was not logged is not reconsidered. Only an ERROR dispatch
+	 * after the outer exchange was logged is a new exchange, since the outer capture never saw the error page.
+	 */
+	private static boolean isNestedDispatch(HttpServletRequest httpRequest) {
+		Object state = httpRequest.getAttribute(EXCHANGE_STATE_ATTRIBUTE);
+		return state != null && (state != ExchangeState.FINISHED || httpRequest.getDispatcherType() != DispatcherType.ERROR);
+	}
 
-		String disablePrefixParam = filterConfig.getInitParameter("disablePrefix");
-		if (isNotBlank(disablePrefixParam)) {
-			this.disablePrefix = Boolean.valueOf(disablePrefixParam);
+	private void proceed(HttpServletRequest httpRequest, HttpServletResponse httpResponse, FilterChain filterChain) throws IOException, ServletException {
+		FilterMetrics currentMetrics = metrics;
+		if (currentMetrics == null) {
+			filterChain.doFilter(httpRequest, httpResponse);
+			return;
+		}
+		long startNanos = System.nanoTime();
+		try {
+			filterChain.doFilter(httpRequest, httpResponse);
+		} catch (IOException | ServletException | RuntimeException e) {
+			recordMetrics(currentMetrics, httpRequest, httpResponse, startNanos);
+			throw e;
 		}
 
-		String disableMarkerParam = filterConfig.getInitParameter("disableMarker");
-		if (isNotBlank(disableMarkerParam)) {
-			this.disableMarker = Boolean.valueOf(disableMarkerParam);
+		if (httpRequest.isAsyncStarted()) {
+			httpRequest.getAsyncContext().addListener(new LoggingAsyncListener(
+					failed -> recordMetrics(currentMetrics, httpRequest, httpResponse, startNanos)));
+			return;
 		}
+		recordMetrics(currentMetrics, httpRequest, httpResponse, startNanos);
 	}
 
-	@Override
-	@SuppressWarnings({"squid:S3457", "squid:S2629"})
-	public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) throws IOException, ServletException {
-		if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
-			throw new ServletException("LoggingFilter just supports HTTP requests");
-		}
-		HttpServletRequest httpRequest = (HttpServletRequest) request;
-		HttpServletResponse httpResponse = (HttpServletResponse) response;
+	private static void recordMetrics(FilterMetrics currentMetrics, HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+			long startNanos) {
+		currentMetrics.record(getRoute(httpRequest), httpResponse.getStatus(), System.nanoTime() - startNanos,
+				httpRequest.getContentLengthLong(), -1);
+	}
 
-		if (!log.isDebugEnabled()) {
+	/**
+	 * Proceeds without wrapping and logs a summary line, or adds the exchange to the aggregate of its route when the
+	 * aggregated route is given.
+	 */
+	private void summarize(LoggingConfig current, HttpServletRequest httpRequest, HttpServletResponse httpResponse, FilterChain filterChain,
+			String aggregatedRoute) throws IOException, ServletException {
+		httpRequest.setAttribute(EXCHANGE_STATE_ATTRIBUTE, ExchangeState.ACTIVE);
+		long startNanos = System.nanoTime();
+		try {
 			filterChain.doFilter(httpRequest, httpResponse);
+		} catch (IOException | ServletException | RuntimeException e) {
+			try {
+				finishSummary(current, httpRequest, httpResponse, startNanos, aggregatedRoute, true);
+			} catch (RuntimeException loggingException) {
+				e.addSuppressed(loggingException);
+			}
+			throw e;
+		}
+
+		if (httpRequest.isAsyncStarted()) {
+			httpRequest.getAsyncContext().addListener(new LoggingAsyncListener(
+					failed -> finishSummary(current, httpRequest, httpResponse, startNanos, aggregatedRoute, failed)));
 			return;
 		}
-		for (String excludedPath : excludedPaths) {
-			String requestURI = httpRequest.getRequestURI();
-			if (requestURI.startsWith(excludedPath)) {
-				filterChain.doFilter(httpRequest, httpResponse);
-				return;
+		finishSummary(current, httpRequest, httpResponse, startNanos, aggregatedRoute, false);
+	}
+
+	private void finishSummary(LoggingConfig current, HttpServletRequest httpRequest, HttpServletResponse httpResponse, long startNanos,
+			String aggregatedRoute, boolean failed) {
+		long finishStartNanos = System.nanoTime();
+		long durationNanos = finishStartNanos - startNanos;
+		try {
+			if (aggregatedRoute != null) {
+				getAggregator().record(httpRequest.getMethod(), aggregatedRoute, httpResponse.getStatus(), durationNanos,
+						httpRequest.getContentLengthLong(), getContentLength(httpResponse), failed);
+			} else {
+				logResponse(current, getSummaryMessage(current, httpRequest, httpResponse, durationNanos));
 			}
+		} finally {
+			httpRequest.setAttribute(EXCHANGE_STATE_ATTRIBUTE, ExchangeState.FINISHED);
+			FilterMetrics currentMetrics = metrics;
+			if (currentMetrics != null) {
+				currentMetrics.record(getRoute(httpRequest), httpResponse.getStatus(), durationNanos, httpRequest.getContentLengthLong(), -1);
+			}
+			recordOverhead(System.nanoTime() - finishStartNanos);
+		}
+	}
+
+	private static long getContentLength(HttpServletResponse httpResponse) {
+		String contentLength = httpResponse.getHeader("Content-Length");
+		try {
+			return contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
 		}
+	}
 
-		LoggingHttpServletRequestWrapper requestWrapper = new LoggingHttpServletRequestWrapper(httpRequest);
-		LoggingHttpServletResponseWrapper responseWrapper = new LoggingHttpServletResponseWrapper(httpResponse);
+	private static String getRoute(HttpServletRequest httpRequest) {
+		HttpServletMapping mapping = httpRequest.getHttpServletMapping();
+		String pattern = mapping != null ? mapping.getPattern() : null;
+		return isNotBlank(pattern) ? pattern : UNMAPPED_ROUTE;
+	}
 
-		String resolvedRequestPrefix = disablePrefix ? "" : requestPrefix;
-		String resolvedResponsePrefix = disablePrefix ? "" : responsePrefix;
+	private CaptureLevel getCaptureLevel(LoggingConfig current) {
+		OverloadGovernor currentGovernor = governor;
+		return currentGovernor != null ? current.getCaptureLevel().atMost(currentGovernor.getLevel()) : current.getCaptureLevel();
+	}
 
-		if (disableMarker) {
-			log.debug(resolvedRequestPrefix + getRequestDescription(requestWrapper));
-		} else {
-			log.debug(requestMarker, resolvedRequestPrefix + getRequestDescription(requestWrapper));
+	private int getCaptureLimit(LoggingConfig current, CaptureLevel level) {
+		if (level == CaptureLevel.HEADERS) {
+			return 0;
+		}
+		return log.isTraceEnabled() ? Integer.MAX_VALUE : current.getMaxContentSize();
+	}
+
+	/**
+	 * Records the exchange in the flight recorder, if any, and logs it when it was sampled. An exchange which is only
+	 * recorded is wrapped the same way, so the recorder also sees exchanges which are not logged.
+	 */
+	private void finishExchange(LoggingConfig current, LoggingHttpServletRequestWrapper requestWrapper, LoggingHttpServletResponseWrapper responseWrapper,
+			boolean logged, long startNanos, long setupNanos, boolean failed) {
+		long finishStartNanos = System.nanoTime();
+		long durationNanos = finishStartNanos - startNanos;
+		try {
+			String id = null;
+			FlightRecorder<RecordedExchange> currentRecorder = flightRecorder;
+			if (currentRecorder != null) {
+				id = getExchangeId(requestWrapper);
+				currentRecorder.record(RecordedExchange.of(id, TimeUnit.NANOSECONDS.toMillis(durationNanos), requestWrapper, responseWrapper,
+						current.getHeaderMatcher()));
+			}
+			if (logged && current.isRetained(responseWrapper.getStatus(), durationNanos, failed)) {
+				logExchange(current, id, requestWrapper, responseWrapper, durationNanos);
+			} else if (logged && current.isTailSummary()) {
+				logResponse(current, getSummaryMessage(current, requestWrapper, responseWrapper, durationNanos));
+			}
+			if (currentRecorder != null && currentRecorder.isBurstReached(responseWrapper.getStatus(), failed)) {
+				logFlightRecorder(current, currentRecorder);
+			}
+		} finally {
+			requestWrapper.release();
+			responseWrapper.release();
+			requestWrapper.setAttribute(EXCHANGE_STATE_ATTRIBUTE, ExchangeState.FINISHED);
+			FilterMetrics currentMetrics = metrics;
+			if (currentMetrics != null) {
+				currentMetrics.record(getRoute(requestWrapper), responseWrapper.getStatus(), durationNanos,
+						requestWrapper.getBodySize(), responseWrapper.getBodySize());
+			}
+			recordOverhead(setupNanos + System.nanoTime() - finishStartNanos);
 		}
+	}
 
-		filterChain.doFilter(requestWrapper, responseWrapper);
+	private void recordOverhead(long overheadNanos) {
+		FilterMetrics currentMetrics = metrics;
+		if (currentMetrics != null) {
+			currentMetrics.recordOverhead(overheadNanos);
+		}
+		OverloadGovernor currentGovernor = governor;
+		if (currentGovernor != null) {
+			currentGovernor.recordOverhead(overheadNanos);
+		}
+	}
 
-		if (disableMarker) {
-			log.debug(resolvedResponsePrefix + getResponseDescription(responseWrapper));
+	/**
+	 * Logs a retained exchange under the id it was recorded with, if any. An exchange with a spilled body is logged on
+	 * the request thread even with the dispatcher, right before the parts of its body, and its request or response
+	 * record carries the correlation id the parts refer to.
+	 */
+	private void logExchange(LoggingConfig current, String recordedId, LoggingHttpServletRequestWrapper requestWrapper,
+			LoggingHttpServletResponseWrapper responseWrapper, long durationNanos) {
+		BinaryExchangeLog currentBinaryLog = binaryLog;
+		AsyncLogDispatcher dispatcher = asyncLogDispatcher;
+		boolean requestSpilled = currentBinaryLog == null && requestWrapper.isSpilled();
+		boolean responseSpilled = currentBinaryLog == null && responseWrapper.isSpilled();
+		String id = recordedId != null ? recordedId : currentBinaryLog != null || dispatcher != null || current.isCombinedExchange()
+				|| requestSpilled || responseSpilled ? getExchangeId(requestWrapper) : null;
+		if (currentBinaryLog != null || dispatcher != null && !requestSpilled && !responseSpilled) {
+			boolean bodyDropped = dispatcher != null && dispatcher.dropBody();
+			LoggingExchange exchange = new LoggingExchange(id, TimeUnit.NANOSECONDS.toMillis(durationNanos),
+					createLoggingRequest(requestWrapper, bodyDropped), createLoggingResponse(responseWrapper, bodyDropped));
+			if (dispatcher != null) {
+				dispatcher.submit(exchange);
+			} else {
+				currentBinaryLog.append(exchange, current.isCombinedExchange());
+			}
+		} else if (current.isCombinedExchange()) {
+			logExchange(current, getExchangeMessage(current, id, TimeUnit.NANOSECONDS.toMillis(durationNanos),
+					requestWrapper, responseWrapper));
 		} else {
-			log.debug(responseMarker, resolvedResponsePrefix + getResponseDescription(responseWrapper));
+			logRequest(current, getRequestMessage(current, requestSpilled ? id : null, requestWrapper));
+			logResponse(current, getResponseMessage(current, responseSpilled ? id : null, responseWrapper));
+		}
+		if (requestSpilled) {
+			logSpilledRequest(current, id, requestWrapper);
+		}
+		if (responseSpilled) {
+			logSpilledResponse(current, id, responseWrapper);
+		}
+	}
+
+	/**
+	 * Logs a spilled request body straight from its temporary file in parts, unless body redaction would need the
+	 * whole body to find what to mask.
+	 */
+	private void logSpilledRequest(LoggingConfig current, String id, LoggingHttpServletRequestWrapper requestWrapper) {
+		if (current.getRedactionRules().isBodyRedacted(requestWrapper.isFormPost())) {
+			return;
+		}
+		int[] part = {0};
+		requestWrapper.getContent(SPILLED_PART_SIZE, body -> logRequest(current, encodeBodyPart(current, current.getRequestPrefix(), id, ++part[0], body)));
+	}
+
+	private void logSpilledResponse(LoggingConfig current, String id, LoggingHttpServletResponseWrapper responseWrapper) {
+		if (current.getRedactionRules().isBodyRedacted(false)) {
+			return;
 		}
+		int[] part = {0};
+		responseWrapper.getContent(SPILLED_PART_SIZE, body -> logResponse(current, encodeBodyPart(current, current.getResponsePrefix(), id, ++part[0], body)));
+	}
 
-		httpResponse.getOutputStream().write(responseWrapper.getContentAsBytes());
+	private String encodeBodyPart(LoggingConfig current, String prefix, String id, int part, String body) {
+		try {
+			return current.getJsonEncoder().encodeBodyPart(prefix, id, part, body);
+		} catch (IOException e) {
+			log.warn("Cannot serialize body part to JSON", e);
+			return prefix + null;
+		}
 	}
 
 	@Override
 	public void destroy() {
-		// nothing special
+		closeResources();
 	}
 
-	protected String getRequestDescription(LoggingHttpServletRequestWrapper requestWrapper) {
-		LoggingRequest loggingRequest = new LoggingRequest();
-		loggingRequest.setSender(requestWrapper.getLocalAddr());
-		loggingRequest.setMethod(requestWrapper.getMethod());
-		loggingRequest.setPath(requestWrapper.getRequestURI());
-		loggingRequest.setParams(requestWrapper.isFormPost() ? null : requestWrapper.getParameters());
-		loggingRequest.setHeaders(requestWrapper.getHeaders());
-		String content = requestWrapper.getContent();
-		if (log.isTraceEnabled()) {
-			loggingRequest.setBody(content);
+	/**
+	 * Overrides an init parameter of the running filter, or restores it when the value is {@code null}. Only settings that
+	 * do not own resources can be changed, see {@link #getParameters()}. The new settings apply to requests that start
+	 * after the call.
+	 *
+	 * @throws IllegalArgumentException if the parameter is unknown or its value is invalid
+	 */
+	public synchronized void setParameter(String name, String value) {
+		if (!LoggingConfig.PARAMETERS.contains(name)) {
+			throw new IllegalArgumentException("Parameter " + name + " cannot be changed at runtime, supported parameters are " + LoggingConfig.PARAMETERS);
+		}
+		Map<String, String> updated = new HashMap<>(overrides);
+		if (value != null) {
+			updated.put(name, value);
 		} else {
-			loggingRequest.setBody(content.substring(0, Math.min(content.length(), maxContentSize)));
+			updated.remove(name);
 		}
+		this.config = createConfig(fileParameters, updated);
+		this.overrides = updated;
+	}
 
+	public synchronized void resetParameters() {
+		this.config = createConfig(fileParameters, emptyMap());
+		this.overrides = emptyMap();
+	}
+
+	/**
+	 * Returns the parameters currently applied on top of the init parameters, from the configuration file and from
+	 * {@link #setParameter(String, String)}.
+	 */
+	public synchronized Map<String, String> getParameters() {
+		Map<String, String> parameters = new TreeMap<>(fileParameters);
+		parameters.putAll(overrides);
+		return parameters;
+	}
+
+	/**
+	 * Reads the configuration file again. A file that cannot be read or holds invalid values is reported and the current
+	 * settings are kept.
+	 */
+	public synchronized void reloadConfigFile() {
+		if (configFile == null) {
+			return;
+		}
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(configFile)) {
+			configFileModified = Files.getLastModifiedTime(configFile);
+			properties.load(reader);
+		} catch (IOException e) {
+			log.warn("Cannot read configuration file " + configFile + ", current settings are kept", e);
+			return;
+		}
+		Map<String, String> loaded = new HashMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			if (LoggingConfig.PARAMETERS.contains(name)) {
+				loaded.put(name, properties.getProperty(name));
+			} else {
+				log.warn("Parameter " + name + " in " + configFile + " cannot be changed at runtime and is ignored");
+			}
+		}
 		try {
-			return OBJECT_MAPPER.writeValueAsString(loggingRequest);
-		} catch (JsonProcessingException e) {
-			log.warn("Cannot serialize Request to JSON", e);
-			return null;
+			this.config = createConfig(loaded, overrides);
+			this.fileParameters = loaded;
+		} catch (RuntimeException e) {
+			log.warn("Invalid configuration file " + configFile + ", current settings are kept", e);
 		}
 	}
 
-	protected String getResponseDescription(LoggingHttpServletResponseWrapper responseWrapper) {
-		LoggingResponse loggingResponse = new LoggingResponse();
-		loggingResponse.setStatus(responseWrapper.getStatus());
-		loggingResponse.setHeaders(responseWrapper.getHeaders());
-		String content = responseWrapper.getContent();
-		if (log.isTraceEnabled()) {
-			loggingResponse.setBody(content);
+	/**
+	 * Returns the capture level applied to new requests, the configured level lowered by the overload governor if any.
+	 */
+	public CaptureLevel getCaptureLevel() {
+		return getCaptureLevel(config);
+	}
+
+	public AsyncLogDispatcher getAsyncLogDispatcher() {
+		return asyncLogDispatcher;
+	}
+
+	public BinaryExchangeLog getBinaryLog() {
+		return binaryLog;
+	}
+
+	public CaptureBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	public FilterMetrics getMetrics() {
+		return metrics;
+	}
+
+	public OverloadGovernor getGovernor() {
+		return governor;
+	}
+
+	public FilterControl getControl() {
+		return control;
+	}
+
+	public FlightRecorder<RecordedExchange> getFlightRecorder() {
+		return flightRecorder;
+	}
+
+	/**
+	 * Returns the exchanges held by the flight recorder as a JSON array of exchange records, from the oldest to the most
+	 * recent, or {@code null} when the recorder is not enabled. The recorded bodies are decoded and redacted only now.
+	 */
+	public String dumpFlightRecorder() {
+		FlightRecorder<RecordedExchange> currentRecorder = flightRecorder;
+		return currentRecorder != null ? getFlightRecorderDump(config, currentRecorder) : null;
+	}
+
+	/**
+	 * Logs the flight recorder at WARN level, so an error burst is seen even while exchanges are not logged.
+	 */
+	private void logFlightRecorder(LoggingConfig current, FlightRecorder<RecordedExchange> recorder) {
+		String message = current.getFlightRecorderPrefix() + getFlightRecorderDump(current, recorder);
+		Marker marker = current.getFlightRecorderMarker();
+		if (marker == null) {
+			log.warn(message);
 		} else {
-			loggingResponse.setBody(content.substring(0, Math.min(content.length(), maxContentSize)));
+			log.warn(marker, message);
+		}
+	}
+
+	private String getFlightRecorderDump(LoggingConfig current, FlightRecorder<RecordedExchange> recorder) {
+		StringBuilder dump = new StringBuilder("[");
+		for (RecordedExchange recorded : recorder.snapshot()) {
+			if (dump.length() > 1) {
+				dump.append(',');
+			}
+			dump.append(getExchangeMessage(current, "", createLoggingExchange(current, recorded)));
+		}
+		return dump.append(']').toString();
+	}
+
+	/**
+	 * Returns the aggregator of exchanges on aggregated paths, created when the first such exchange finishes.
+	 */
+	public ExchangeAggregator getAggregator() {
+		ExchangeAggregator current = aggregator;
+		if (current == null) {
+			synchronized (this) {
+				current = aggregator;
+				if (current == null) {
+					current = new ExchangeAggregator(settings.aggregationWindowMillis, TimeUnit.MILLISECONDS, this::logAggregate);
+					aggregator = current;
+				}
+			}
 		}
+		return current;
+	}
 
+	private void logAggregate(ExchangeAggregate aggregate) {
+		LoggingConfig current = config;
+		String prefix = current.getResponsePrefix();
+		String message;
 		try {
-			return OBJECT_MAPPER.writeValueAsString(loggingResponse);
-		} catch (JsonProcessingException e) {
-			log.warn("Cannot serialize Response to JSON", e);
-			return null;
+			message = current.getJsonEncoder().encodeAggregate(prefix, aggregate);
+		} catch (IOException e) {
+			log.warn("Cannot serialize aggregate to JSON", e);
+			message = prefix + null;
 		}
+		logResponse(current, message);
 	}
 
-	public static class Builder {
+	private synchronized void closeAggregator() {
+		if (aggregator != null) {
+			aggregator.close();
+			aggregator = null;
+		}
+	}
+
+	/**
+	 * Opens every resource the settings ask for. The constructor and {@link #init(FilterConfig)} share this single path,
+	 * so init parameters and builder settings produce the same resources.
+	 */
+	private synchronized void openResources(Builder builder) {
+		if (builder.bufferPoolSize > 0 && builder.maxContentSize > 0) {
+			this.bufferPool = new CaptureBufferPool(builder.bufferPoolSize, builder.maxContentSize, builder.bufferPoolDirect);
+		}
+		if (builder.binaryLogDirectory != null) {
+			this.binaryLog = createBinaryLog(builder.binaryLogDirectory, builder.binaryLogSegmentSize, builder.binaryLogMaxSegments);
+		}
+		if (builder.asyncQueueSize > 0) {
+			this.asyncLogDispatcher = createAsyncLogDispatcher(builder.asyncQueueSize, builder.asyncWorkers, builder.asyncOverflowPolicy);
+		}
+		if (wrapperDescriptionCustomized && (binaryLog != null || asyncLogDispatcher != null)) {
+			log.warn("Overridden descriptions of the wrappers are not used by asynchronous and binary logging, "
+					+ "override getRequestDescription(LoggingRequest) and getResponseDescription(LoggingResponse) instead");
+		}
+		if (builder.metricsName != null) {
+			this.metrics = createMetrics(builder.metricsName);
+		}
+		if (builder.governorOverheadThresholdNanos > 0 || builder.governorQueueThreshold > 0 || builder.governorHeapThreshold > 0) {
+			this.governor = new OverloadGovernor(builder.governorOverheadThresholdNanos, builder.governorQueueThreshold,
+					builder.governorHeapThreshold, this::getQueueUtilization);
+		}
+		if (builder.flightRecorderSize > 0) {
+			this.flightRecorder = new FlightRecorder<>(builder.flightRecorderSize, builder.flightRecorderErrorBurst,
+					builder.flightRecorderErrorWindowMillis, TimeUnit.MILLISECONDS);
+		}
+		if (builder.controlName != null) {
+			this.control = createControl(builder.controlName);
+		}
+		if (builder.configFile != null) {
+			watchConfigFile(builder.configFile, builder.configFileIntervalMillis);
+		}
+	}
 
-		private String loggerName = LoggingFilter.class.getName();
+	/**
+	 * Stops the config file watcher, drains the async dispatcher into the binary log before closing it, unregisters
+	 * the MBeans and logs the pending aggregates, then drops the in-memory resources.
+	 */
+	private synchronized void closeResources() {
+		stopWatchingConfigFile();
+		closeAsyncLogDispatcher();
+		closeBinaryLog();
+		unregisterMetrics();
+		unregisterControl();
+		closeAggregator();
+		this.governor = null;
+		this.flightRecorder = null;
+		this.bufferPool = null;
+	}
 
-		private int maxContentSize = 1024;
+	private LoggingConfig createConfig(Map<String, String> fileParameters, Map<String, String> overrides) {
+		Map<String, String> parameters = new HashMap<>(fileParameters);
+		parameters.putAll(overrides);
+		return new LoggingConfig(settings.copy().parameters(parameters::get), config);
+	}
 
-		private Set<String> excludedPaths = emptySet();
+	private synchronized void watchConfigFile(Path file, long intervalMillis) {
+		stopWatchingConfigFile();
+		this.configFile = file;
+		reloadConfigFile();
+		configFileWatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "logging-filter-config");
+			thread.setDaemon(true);
+			return thread;
+		});
+		configFileWatcher.scheduleWithFixedDelay(this::checkConfigFile, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
 
-		private Marker requestMarker = MarkerFactory.getMarker("REQUEST");
-		private String requestPrefix = requestMarker.getName() + ": ";
+	private synchronized void checkConfigFile() {
+		try {
+			if (Files.exists(configFile) && !Files.getLastModifiedTime(configFile).equals(configFileModified)) {
+				reloadConfigFile();
+			}
+		} catch (IOException | RuntimeException e) {
+			log.warn("Cannot check configuration file " + configFile, e);
+		}
+	}
 
-		private Marker responseMarker = MarkerFactory.getMarker("RESPONSE");
-		private String responsePrefix = responseMarker.getName() + ": ";
+	private synchronized void stopWatchingConfigFile() {
+		if (configFileWatcher != null) {
+			configFileWatcher.shutdownNow();
+			configFileWatcher = null;
+		}
+	}
 
-		private boolean disableMarker;
-		private boolean disablePrefix;
+	private double getQueueUtilization() {
+		AsyncLogDispatcher dispatcher = asyncLogDispatcher;
+		return dispatcher != null ? (double) dispatcher.getQueueSize() / dispatcher.getQueueCapacity() : 0;
+	}
 
-		public static Builder create() {
-			return new Builder();
+	private FilterMetrics createMetrics(String name) {
+		FilterMetrics filterMetrics = new FilterMetrics();
+		try {
+			filterMetrics.register(isNotBlank(name) ? name : log.getName());
+		} catch (IllegalStateException e) {
+			log.warn("Metrics are recorded but not published over JMX", e);
 		}
+		return filterMetrics;
+	}
 
-		public void loggerName(String loggerName) {
-			requireNonNull(loggerName, "loggerName must not be null");
-			this.loggerName = loggerName;
+	private FilterControl createControl(String name) {
+		FilterControl filterControl = new FilterControl(this);
+		try {
+			filterControl.register(isNotBlank(name) ? name : log.getName());
+		} catch (IllegalStateException e) {
+			log.warn("Settings cannot be changed over JMX", e);
 		}
+		return filterControl;
+	}
 
-		public Builder maxContentSize(int maxContentSize) {
-			this.maxContentSize = maxContentSize;
-			return this;
+	private BinaryExchangeLog createBinaryLog(Path directory, int segmentSize, int maxSegments) {
+		try {
+			return new BinaryExchangeLog(directory, segmentSize, maxSegments);
+		} catch (IOException e) {
+			log.warn("Cannot open binary exchange log in " + directory + ", exchanges are logged as text", e);
+			return null;
 		}
+	}
 
-		public Builder excludedPaths(String... excludedPaths) {
-			requireNonNull(excludedPaths, "excludedPaths must not be null");
-			this.excludedPaths = Stream.of(excludedPaths).collect(toSet());
-			return this;
+	private void closeBinaryLog() {
+		if (binaryLog != null) {
+			binaryLog.close();
+			binaryLog = null;
 		}
+	}
 
-		public Builder requestMarker(String marker) {
-			requireNonNull(marker, "marker must not be null");
-			this.requestMarker = MarkerFactory.getMarker(marker);
-			return this;
+	private void unregisterMetrics() {
+		if (metrics != null) {
+			metrics.unregister();
+			metrics = null;
 		}
+	}
 
-		public Builder requestPrefix(String requestPrefix) {
-			requireNonNull(requestPrefix, "requestPrefix must not be null");
-			this.requestPrefix = requestPrefix;
-			return this;
+	private void unregisterControl() {
+		if (control != null) {
+			control.unregister();
+			control = null;
 		}
+	}
 
-		public Builder responsePrefix(String responsePrefix) {
-			requireNonNull(responsePrefix, "responsePrefix must not be null");
-			this.responsePrefix = responsePrefix;
-			return this;
+	private void logExchange(LoggingConfig current, String message) {
+		Marker marker = current.getExchangeMarker();
+		if (marker == null) {
+			log.debug(message);
+		} else {
+			log.debug(marker, message);
 		}
+	}
 
-		public Builder responseMarker(String marker) {
-			requireNonNull(marker, "marker must not be null");
-			this.responseMarker = MarkerFactory.getMarker(marker);
-			return this;
+	private void logRequest(LoggingConfig current, String message) {
+		Marker marker = current.getRequestMarker();
+		if (marker == null) {
+			log.debug(message);
+		} else {
+			log.debug(marker, message);
 		}
+	}
 
-		public Builder disableMarker(boolean disable) {
-			this.disableMarker = disable;
-			return this;
+	private void logResponse(LoggingConfig current, String message) {
+		Marker marker = current.getResponseMarker();
+		if (marker == null) {
+			log.debug(message);
+		} else {
+			log.debug(marker, message);
 		}
+	}
 
-		public Builder disablePrefix(boolean disable) {
-			this.disablePrefix = disable;
-			return this;
+	private String getRequestMessage(LoggingConfig current, String id, LoggingHttpServletRequestWrapper requestWrapper) {
+		if (requestDescriptionCustomized) {
+			return current.getRequestPrefix() + getRequestDescription(requestWrapper);
+		}
+		return encodeRequest(current, current.getRequestPrefix(), id, requestWrapper);
+	}
+
+	private String getResponseMessage(LoggingConfig current, String id, LoggingHttpServletResponseWrapper responseWrapper) {
+		if (responseDescriptionCustomized) {
+			return current.getResponsePrefix() + getResponseDescription(responseWrapper);
+		}
+		return encodeResponse(current, current.getResponsePrefix(), id, responseWrapper);
+	}
+
+	/**
+	 * Returns the correlation id sent by the client in {@value #REQUEST_ID_HEADER} or a new one unique to this filter.
+	 */
+	private String getExchangeId(HttpServletRequest httpRequest) {
+		String requestId = httpRequest.getHeader(REQUEST_ID_HEADER);
+		return isNotBlank(requestId) ? requestId : exchangeIdPrefix + Long.toString(exchangeSequence.incrementAndGet(), 36);
+	}
+
+	private String getExchangeMessage(LoggingConfig current, String id, long durationMillis, LoggingHttpServletRequestWrapper requestWrapper,
+			LoggingHttpServletResponseWrapper responseWrapper) {
+		String prefix = current.getExchangePrefix();
+		try {
+			if (requestDescriptionCustomized || responseDescriptionCustomized) {
+				return current.getJsonEncoder().encodeExchange(prefix, id, durationMillis, getRequestDescription(requestWrapper),
+						getResponseDescription(responseWrapper));
+			}
+			return current.getJsonEncoder().encodeExchange(prefix, id, durationMillis, requestWrapper, getLoggedContent(current, requestWrapper),
+					responseWrapper, getLoggedContent(current, responseWrapper));
+		} catch (IOException e) {
+			log.warn("Cannot serialize Exchange to JSON", e);
+			return prefix + null;
+		}
+	}
+
+	private String getExchangeMessage(LoggingConfig current, String prefix, LoggingExchange exchange) {
+		try {
+			if (requestEntityCustomized || responseEntityCustomized) {
+				return current.getJsonEncoder().encodeExchange(prefix, exchange.getId(), exchange.getDurationMillis(),
+						getRequestDescription(exchange.getRequest()), getResponseDescription(exchange.getResponse()));
+			}
+			return current.getJsonEncoder().encode(prefix, exchange);
+		} catch (IOException e) {
+			log.warn("Cannot serialize Exchange to JSON", e);
+			return prefix + null;
+		}
+	}
+
+	private String getSummaryMessage(LoggingConfig current, HttpServletRequest httpRequest, HttpServletResponse httpResponse, long durationNanos) {
+		String prefix = current.getResponsePrefix();
+		try {
+			return current.getJsonEncoder().encodeSummary(prefix, httpRequest.getMethod(), httpRequest.getRequestURI(),
+					httpResponse.getStatus(), TimeUnit.NANOSECONDS.toMillis(durationNanos));
+		} catch (IOException e) {
+			log.warn("Cannot serialize Response to JSON", e);
+			return prefix + null;
+		}
+	}
+
+	private String getRequestMessage(LoggingConfig current, String id, LoggingRequest loggingRequest) {
+		if (requestEntityCustomized) {
+			return current.getRequestPrefix() + getRequestDescription(loggingRequest);
+		}
+		return encode(current, current.getRequestPrefix(), id, loggingRequest);
+	}
+
+	private String getResponseMessage(LoggingConfig current, String id, LoggingResponse loggingResponse) {
+		if (responseEntityCustomized) {
+			return current.getResponsePrefix() + getResponseDescription(loggingResponse);
+		}
+		return encode(current, current.getResponsePrefix(), id, loggingResponse);
+	}
+
+	private AsyncLogDispatcher createAsyncLogDispatcher(int queueSize, int workers, OverflowPolicy overflowPolicy) {
+		return new AsyncLogDispatcher(queueSize, workers, overflowPolicy, exchange -> {
+			BinaryExchangeLog currentBinaryLog = binaryLog;
+			LoggingConfig current = config;
+			if (currentBinaryLog != null) {
+				currentBinaryLog.append(exchange, current.isCombinedExchange());
+				return;
+			}
+			if (current.isCombinedExchange()) {
+				logExchange(current, getExchangeMessage(current, current.getExchangePrefix(), exchange));
+				return;
+			}
+			logRequest(current, getRequestMessage(current, null, exchange.getRequest()));
+			logResponse(current, getResponseMessage(current, null, exchange.getResponse()));
+		});
+	}
+
+	private static List<String> splitList(String value) {
+		return isNotBlank(value) ? asList(value.trim().split("\\s*,\\s*")) : emptyList();
+	}
+
+	private boolean isOverridden(String methodName, Class<?> parameterType) {
+		for (Class<?> type = getClass(); type != LoggingFilter.class; type = type.getSuperclass()) {
+			try {
+				type.getDeclaredMethod(methodName, parameterType);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// not declared on this level
+			}
+		}
+		return false;
+	}
+
+	private void closeAsyncLogDispatcher() {
+		if (asyncLogDispatcher != null) {
+			asyncLogDispatcher.close();
+			asyncLogDispatcher = null;
+		}
+	}
+
+	/**
+	 * Describes the request while its wrapper is still open. Asynchronous and binary logging describe the exchange
+	 * later from {@link #createLoggingRequest(LoggingHttpServletRequestWrapper)} and do not use this method.
+	 */
+	protected String getRequestDescription(LoggingHttpServletRequestWrapper requestWrapper) {
+		if (requestEntityCustomized) {
+			return getRequestDescription(createLoggingRequest(requestWrapper));
+		}
+		return encodeRequest(config, "", null, requestWrapper);
+	}
+
+	/**
+	 * Describes the response while its wrapper is still open. Asynchronous and binary logging describe the exchange
+	 * later from {@link #createLoggingResponse(LoggingHttpServletResponseWrapper)} and do not use this method.
+	 */
+	protected String getResponseDescription(LoggingHttpServletResponseWrapper responseWrapper) {
+		if (responseEntityCustomized) {
+			return getResponseDescription(createLoggingResponse(responseWrapper));
+		}
+		return encodeResponse(config, "", null, responseWrapper);
+	}
+
+	protected LoggingRequest createLoggingRequest(LoggingHttpServletRequestWrapper requestWrapper) {
+		LoggingConfig current = config;
+		LoggingRequest loggingRequest = createBodilessLoggingRequest(current, requestWrapper);
+		loggingRequest.setBody(getLoggedContent(current, requestWrapper));
+		return loggingRequest;
+	}
+
+	protected LoggingResponse createLoggingResponse(LoggingHttpServletResponseWrapper responseWrapper) {
+		LoggingConfig current = config;
+		LoggingResponse loggingResponse = createBodilessLoggingResponse(current, responseWrapper);
+		loggingResponse.setBody(getLoggedContent(current, responseWrapper));
+		return loggingResponse;
+	}
+
+	/**
+	 * Creates the request entity, leaving the body undecoded when it is dropped anyway. An overridden factory is always
+	 * used as is.
+	 */
+	private LoggingRequest createLoggingRequest(LoggingHttpServletRequestWrapper requestWrapper, boolean bodyDropped) {
+		if (!bodyDropped || requestFactoryCustomized) {
+			return createLoggingRequest(requestWrapper);
+		}
+		LoggingRequest loggingRequest = createBodilessLoggingRequest(config, requestWrapper);
+		loggingRequest.setBody(AsyncLogDispatcher.DROPPED_BODY);
+		return loggingRequest;
+	}
+
+	private LoggingResponse createLoggingResponse(LoggingHttpServletResponseWrapper responseWrapper, boolean bodyDropped) {
+		if (!bodyDropped || responseFactoryCustomized) {
+			return createLoggingResponse(responseWrapper);
+		}
+		LoggingResponse loggingResponse = createBodilessLoggingResponse(config, responseWrapper);
+		loggingResponse.setBody(AsyncLogDispatcher.DROPPED_BODY);
+		return loggingResponse;
+	}
+
+	private static LoggingRequest createBodilessLoggingRequest(LoggingConfig current, LoggingHttpServletRequestWrapper requestWrapper) {
+		RedactionRules redactionRules = current.getRedactionRules();
+		LoggingRequest loggingRequest = new LoggingRequest();
+		loggingRequest.setSender(requestWrapper.getLocalAddr());
+		loggingRequest.setMethod(requestWrapper.getMethod());
+		loggingRequest.setPath(requestWrapper.getRequestURI());
+		loggingRequest.setParams(requestWrapper.isFormPost() ? null : redactionRules.redactParams(requestWrapper.getParameters()));
+		loggingRequest.setHeaders(redactionRules.redactHeaders(requestWrapper.getHeaders(current.getHeaderMatcher())));
+		loggingRequest.setBodyHash(requestWrapper.getBodyHash());
+		loggingRequest.setBodySize(loggingRequest.getBodyHash() != null ? requestWrapper.getBodySize() : null);
+		return loggingRequest;
+	}
+
+	private static LoggingResponse createBodilessLoggingResponse(LoggingConfig current, LoggingHttpServletResponseWrapper responseWrapper) {
+		LoggingResponse loggingResponse = new LoggingResponse();
+		loggingResponse.setStatus(responseWrapper.getStatus());
+		loggingResponse.setHeaders(current.getRedactionRules().redactHeaders(responseWrapper.getHeaders(current.getHeaderMatcher())));
+		loggingResponse.setBodyHash(responseWrapper.getBodyHash());
+		loggingResponse.setBodySize(loggingResponse.getBodyHash() != null ? responseWrapper.getBodySize() : null);
+		return loggingResponse;
+	}
+
+	/**
+	 * Creates the entities of a recorded exchange. Overridden factories need the wrappers and are not used here, while
+	 * overridden descriptions of the entities are.
+	 */
+	private LoggingExchange createLoggingExchange(LoggingConfig current, RecordedExchange recorded) {
+		RedactionRules redactionRules = current.getRedactionRules();
+		int maxChars = getLoggedContentSize(current);
+		LoggingRequest loggingRequest = new LoggingRequest();
+		loggingRequest.setSender(recorded.getSender());
+		loggingRequest.setMethod(recorded.getMethod());
+		loggingRequest.setPath(recorded.getPath());
+		loggingRequest.setParams(recorded.getParams() != null ? redactionRules.redactParams(recorded.getParams()) : null);
+		loggingRequest.setHeaders(redactionRules.redactHeaders(recorded.getRequestHeaders()));
+		loggingRequest.setBody(redactionRules.redactBody(recorded.getRequestContent().toString(maxChars), recorded.isFormPost()));
+		loggingRequest.setBodyHash(recorded.getRequestBodyHash());
+		loggingRequest.setBodySize(recorded.getRequestBodyHash() != null ? recorded.getRequestBodySize() : null);
+		LoggingResponse loggingResponse = new LoggingResponse();
+		loggingResponse.setStatus(recorded.getStatus());
+		loggingResponse.setHeaders(redactionRules.redactHeaders(recorded.getResponseHeaders()));
+		loggingResponse.setBody(redactionRules.redactBody(recorded.getResponseContent().toString(maxChars), false));
+		loggingResponse.setBodyHash(recorded.getResponseBodyHash());
+		loggingResponse.setBodySize(recorded.getResponseBodyHash() != null ? recorded.getResponseBodySize() : null);
+		return new LoggingExchange(recorded.getId(), recorded.getDurationMillis(), loggingRequest, loggingResponse);
+	}
+
+	protected String getRequestDescription(LoggingRequest loggingRequest) {
+		return encode(config, "", null, loggingRequest);
+	}
+
+	protected String getResponseDescription(LoggingResponse loggingResponse) {
+		return encode(config, "", null, loggingResponse);
+	}
+
+	private String getLoggedContent(LoggingConfig current, LoggingHttpServletRequestWrapper requestWrapper) {
+		return current.getRedactionRules().redactBody(requestWrapper.getContent(getLoggedContentSize(current)), requestWrapper.isFormPost());
+	}
+
+	private String getLoggedContent(LoggingConfig current, LoggingHttpServletResponseWrapper responseWrapper) {
+		return current.getRedactionRules().redactBody(responseWrapper.getContent(getLoggedContentSize(current)), false);
+	}
+
+	private int getLoggedContentSize(LoggingConfig current) {
+		return log.isTraceEnabled() ? Integer.MAX_VALUE : current.getMaxContentSize();
+	}
+
+	private String encodeRequest(LoggingConfig current, String prefix, String id, LoggingHttpServletRequestWrapper requestWrapper) {
+		try {
+			return current.getJsonEncoder().encodeRequest(prefix, id, requestWrapper, getLoggedContent(current, requestWrapper));
+		} catch (IOException e) {
+			log.warn("Cannot serialize Request to JSON", e);
+			return prefix + null;
+		}
+	}
+
+	private String encodeResponse(LoggingConfig current, String prefix, String id, LoggingHttpServletResponseWrapper responseWrapper) {
+		try {
+			return current.getJsonEncoder().encodeResponse(prefix, id, responseWrapper, getLoggedContent(current, responseWrapper));
+		} catch (IOException e) {
+			log.warn("Cannot serialize Response to JSON", e);
+			return prefix + null;
+		}
+	}
+
+	private String encode(LoggingConfig current, String prefix, String id, LoggingRequest loggingRequest) {
+		try {
+			return current.getJsonEncoder().encode(prefix, id, loggingRequest);
+		} catch (IOException e) {
+			log.warn("Cannot serialize Request to JSON", e);
+			return prefix + null;
+		}
+	}
+
+	private String encode(LoggingConfig current, String prefix, String id, LoggingResponse loggingResponse) {
+		try {
+			return current.getJsonEncoder().encode(prefix, id, loggingResponse);
+		} catch (IOException e) {
+			log.warn("Cannot serialize Response to JSON", e);
+			return prefix + null;
+		}
+	}
+
+	private enum ExchangeState {
+		SKIPPED, ACTIVE, FINISHED
+	}
+
+	/**
+	 * Finishes an exchange once its asynchronous processing completes, times out or fails, whichever comes first.
+	 */
+	private static class LoggingAsyncListener implements AsyncListener {
+
+		private final Consumer<Boolean> finisher;
+
+		private final AtomicBoolean logged = new AtomicBoolean();
+
+		private LoggingAsyncListener(Consumer<Boolean> finisher) {
+			this.finisher = finisher;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			logOnce(false);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			logOnce(true);
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			logOnce(true);
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			event.getAsyncContext().addListener(this);
+		}
+
+		private void logOnce(boolean failed) {
+			if (logged.compareAndSet(false, true)) {
+				finisher.accept(failed);
+			}
+		}
+	}
+
+	public static class Builder implements Cloneable {
+
+		static final int DEFAULT_BINARY_LOG_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+		static final int DEFAULT_BINARY_LOG_MAX_SEGMENTS = 16;
+
+		static final long DEFAULT_CONFIG_FILE_INTERVAL_MILLIS = 10_000;
+
+		static final long DEFAULT_AGGREGATION_WINDOW_MILLIS = 60_000;
+
+		static final long DEFAULT_FLIGHT_RECORDER_ERROR_WINDOW_MILLIS = 10_000;
+
+		String loggerName = LoggingFilter.class.getName();
+
+		int maxContentSize = 1024;
+
+		Set<String> includedPaths = emptySet();
+
+		Set<String> excludedPaths = emptySet();
+
+		Set<String> capturedContentTypes = new LinkedHashSet<>(ContentTypeMatcher.TEXT_CONTENT_TYPES);
+
+		Set<String> skippedContentTypes = emptySet();
+
+		long maxCapturedContentLength = -1;
+
+		Set<String> includedHeaders = emptySet();
+
+		Set<String> excludedHeaders = emptySet();
+
+		Set<String> redactedHeaders = new LinkedHashSet<>(RedactionRules.DEFAULT_HEADERS);
+
+		Set<String> redactedParams = emptySet();
+
+		Set<String> redactedJsonFields = emptySet();
+
+		double sampleRate = 1.0;
+
+		int sampleLimit = -1;
+
+		Map<String, Integer> sampleRouteLimits = new LinkedHashMap<>();
+
+		boolean tailRetention;
+
+		long tailSlowThresholdNanos;
+
+		int tailErrorStatus = 500;
+
+		boolean tailSummary = true;
+
+		Marker requestMarker = MarkerFactory.getMarker("REQUEST");
+		String requestPrefix = requestMarker.getName() + ": ";
+
+		Marker responseMarker = MarkerFactory.getMarker("RESPONSE");
+		String responsePrefix = responseMarker.getName() + ": ";
+
+		boolean combinedExchange;
+		Marker exchangeMarker = MarkerFactory.getMarker("EXCHANGE");
+		String exchangePrefix = exchangeMarker.getName() + ": ";
+
+		boolean disableMarker;
+		boolean disablePrefix;
+
+		String metricsName;
+
+		Path binaryLogDirectory;
+		int binaryLogSegmentSize = DEFAULT_BINARY_LOG_SEGMENT_SIZE;
+		int binaryLogMaxSegments = DEFAULT_BINARY_LOG_MAX_SEGMENTS;
+
+		int bufferPoolSize;
+		boolean bufferPoolDirect;
+
+		int asyncQueueSize;
+		int asyncWorkers = 1;
+		OverflowPolicy asyncOverflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+		CaptureLevel captureLevel = CaptureLevel.FULL;
+
+		long governorOverheadThresholdNanos;
+		double governorQueueThreshold;
+		double governorHeapThreshold;
+
+		String controlName;
+
+		Path configFile;
+		long configFileIntervalMillis = DEFAULT_CONFIG_FILE_INTERVAL_MILLIS;
+
+		Set<String> aggregatedPaths = emptySet();
+		long aggregationWindowMillis = DEFAULT_AGGREGATION_WINDOW_MILLIS;
+
+		int spillThreshold;
+		Path spillDirectory;
+
+		String bodyDigest;
+
+		int flightRecorderSize;
+		int flightRecorderErrorBurst;
+		long flightRecorderErrorWindowMillis = DEFAULT_FLIGHT_RECORDER_ERROR_WINDOW_MILLIS;
+
+		public static Builder create() {
+			return new Builder();
+		}
+
+		public void loggerName(String loggerName) {
+			requireNonNull(loggerName, "loggerName must not be null");
+			this.loggerName = loggerName;
+		}
+
+		public Builder maxContentSize(int maxContentSize) {
+			this.maxContentSize = maxContentSize;
+			return this;
+		}
+
+		public Builder includedPaths(String... includedPaths) {
+			requireNonNull(includedPaths, "includedPaths must not be null");
+			this.includedPaths = Stream.of(includedPaths).collect(toSet());
+			return this;
+		}
+
+		public Builder excludedPaths(String... excludedPaths) {
+			requireNonNull(excludedPaths, "excludedPaths must not be null");
+			this.excludedPaths = Stream.of(excludedPaths).collect(toSet());
+			return this;
+		}
+
+		/**
+		 * Exchanges on these paths are not logged one by one but counted per method, path pattern and status and logged
+		 * as one aggregate per window.
+		 */
+		public Builder aggregatedPaths(String... aggregatedPaths) {
+			requireNonNull(aggregatedPaths, "aggregatedPaths must not be null");
+			this.aggregatedPaths = Stream.of(aggregatedPaths).collect(toSet());
+			return this;
+		}
+
+		public Builder aggregationWindow(long window, TimeUnit unit) {
+			requireNonNull(unit, "unit must not be null");
+			this.aggregationWindowMillis = unit.toMillis(window);
+			return this;
+		}
+
+		public Builder capturedContentTypes(String... capturedContentTypes) {
+			requireNonNull(capturedContentTypes, "capturedContentTypes must not be null");
+			this.capturedContentTypes = Stream.of(capturedContentTypes).collect(toSet());
+			return this;
+		}
+
+		public Builder skippedContentTypes(String... skippedContentTypes) {
+			requireNonNull(skippedContentTypes, "skippedContentTypes must not be null");
+			this.skippedContentTypes = Stream.of(skippedContentTypes).collect(toSet());
+			return this;
+		}
+
+		/**
+		 * Bodies with a declared Content-Length above the given number of bytes are not captured but only described with
+		 * their size. A negative length captures bodies of any length.
+		 */
+		public Builder maxCapturedContentLength(long maxCapturedContentLength) {
+			this.maxCapturedContentLength = maxCapturedContentLength;
+			return this;
+		}
+
+		public Builder includedHeaders(String... includedHeaders) {
+			requireNonNull(includedHeaders, "includedHeaders must not be null");
+			this.includedHeaders = Stream.of(includedHeaders).collect(toSet());
+			return this;
+		}
+
+		public Builder excludedHeaders(String... excludedHeaders) {
+			requireNonNull(excludedHeaders, "excludedHeaders must not be null");
+			this.excludedHeaders = Stream.of(excludedHeaders).collect(toSet());
+			return this;
+		}
+
+		public Builder redactedHeaders(String... redactedHeaders) {
+			requireNonNull(redactedHeaders, "redactedHeaders must not be null");
+			this.redactedHeaders = Stream.of(redactedHeaders).collect(toSet());
+			return this;
+		}
+
+		public Builder redactedParams(String... redactedParams) {
+			requireNonNull(redactedParams, "redactedParams must not be null");
+			this.redactedParams = Stream.of(redactedParams).collect(toSet());
+			return this;
+		}
+
+		public Builder redactedJsonFields(String... redactedJsonFields) {
+			requireNonNull(redactedJsonFields, "redactedJsonFields must not be null");
+			this.redactedJsonFields = Stream.of(redactedJsonFields).collect(toSet());
+			return this;
+		}
+
+		public Builder sampleRate(double probability) {
+			this.sampleRate = probability;
+			return this;
+		}
+
+		public Builder sampleLimit(int recordsPerSecond) {
+			this.sampleLimit = recordsPerSecond;
+			return this;
+		}
+
+		public Builder sampleLimit(String pathPattern, int recordsPerSecond) {
+			requireNonNull(pathPattern, "pathPattern must not be null");
+			this.sampleRouteLimits.put(pathPattern, recordsPerSecond);
+			return this;
+		}
+
+		public Builder tailRetention(long slowThreshold, TimeUnit unit) {
+			requireNonNull(unit, "unit must not be null");
+			this.tailRetention = true;
+			this.tailSlowThresholdNanos = unit.toNanos(slowThreshold);
+			return this;
+		}
+
+		public Builder tailErrorStatus(int status) {
+			this.tailErrorStatus = status;
+			return this;
+		}
+
+		public Builder tailSummary(boolean summary) {
+			this.tailSummary = summary;
+			return this;
+		}
+
+		public Builder requestMarker(String marker) {
+			requireNonNull(marker, "marker must not be null");
+			this.requestMarker = MarkerFactory.getMarker(marker);
+			return this;
+		}
+
+		public Builder requestPrefix(String requestPrefix) {
+			requireNonNull(requestPrefix, "requestPrefix must not be null");
+			this.requestPrefix = requestPrefix;
+			return this;
+		}
+
+		public Builder responsePrefix(String responsePrefix) {
+			requireNonNull(responsePrefix, "responsePrefix must not be null");
+			this.responsePrefix = responsePrefix;
+			return this;
+		}
+
+		public Builder responseMarker(String marker) {
+			requireNonNull(marker, "marker must not be null");
+			this.responseMarker = MarkerFactory.getMarker(marker);
+			return this;
+		}
+
+		/**
+		 * Logs a request and its response as one exchange record with a correlation id and the duration.
+		 */
+		public Builder combinedExchange(boolean combined) {
+			this.combinedExchange = combined;
+			return this;
+		}
+
+		public Builder exchangeMarker(String marker) {
+			requireNonNull(marker, "marker must not be null");
+			this.exchangeMarker = MarkerFactory.getMarker(marker);
+			return this;
+		}
+
+		public Builder exchangePrefix(String exchangePrefix) {
+			requireNonNull(exchangePrefix, "exchangePrefix must not be null");
+			this.exchangePrefix = exchangePrefix;
+			return this;
+		}
+
+		public Builder disableMarker(boolean disable) {
+			this.disableMarker = disable;
+			return this;
+		}
+
+		public Builder disablePrefix(boolean disable) {
+			this.disablePrefix = disable;
+			return this;
+		}
+
+		public Builder binaryLog(Path directory, int segmentSize, int maxSegments) {
+			requireNonNull(directory, "directory must not be null");
+			this.binaryLogDirectory = directory;
+			this.binaryLogSegmentSize = segmentSize;
+			this.binaryLogMaxSegments = maxSegments;
+			return this;
+		}
+
+		public Builder bufferPool(int size, boolean direct) {
+			this.bufferPoolSize = size;
+			this.bufferPoolDirect = direct;
+			return this;
+		}
+
+		public Builder metrics(String name) {
+			requireNonNull(name, "name must not be null");
+			this.metricsName = name;
+			return this;
+		}
+
+		public Builder async(int queueSize, int workers, OverflowPolicy overflowPolicy) {
+			requireNonNull(overflowPolicy, "overflowPolicy must not be null");
+			this.asyncQueueSize = queueSize;
+			this.asyncWorkers = workers;
+			this.asyncOverflowPolicy = overflowPolicy;
+			return this;
+		}
+
+		public Builder captureLevel(CaptureLevel level) {
+			requireNonNull(level, "level must not be null");
+			this.captureLevel = level;
+			return this;
+		}
+
+		/**
+		 * Lowers the capture level while the mean filter overhead, the async queue fill ratio or the heap usage ratio
+		 * exceeds its threshold. A threshold of zero disables that signal.
+		 */
+		public Builder governor(long overheadThreshold, TimeUnit unit, double queueThreshold, double heapThreshold) {
+			requireNonNull(unit, "unit must not be null");
+			this.governorOverheadThresholdNanos = unit.toNanos(overheadThreshold);
+			this.governorQueueThreshold = queueThreshold;
+			this.governorHeapThreshold = heapThreshold;
+			return this;
+		}
+
+		public Builder control(String name) {
+			requireNonNull(name, "name must not be null");
+			this.controlName = name;
+			return this;
+		}
+
+		public Builder configFile(Path file, long interval, TimeUnit unit) {
+			requireNonNull(file, "file must not be null");
+			requireNonNull(unit, "unit must not be null");
+			this.configFile = file;
+			this.configFileIntervalMillis = unit.toMillis(interval);
+			return this;
+		}
+
+		/**
+		 * Moves bodies captured with TRACE logging enabled into a temporary file in the directory, or the default
+		 * temporary directory when it is {@code null}, once they exceed the threshold in bytes. Spilled bodies are
+		 * logged in parts after the records they belong to.
+		 */
+		public Builder spill(int threshold, Path directory) {
+			this.spillThreshold = threshold;
+			this.spillDirectory = directory;
+			return this;
+		}
+
+		/**
+		 * Digests whole request and response bodies with {@value BodyDigest#XXH64} or a {@link java.security.MessageDigest}
+		 * algorithm such as {@code SHA-256} and logs the digest with the exact body size. {@code null} disables digests.
+		 */
+		public Builder bodyDigest(String algorithm) {
+			this.bodyDigest = algorithm;
+			return this;
+		}
+
+		public Builder flightRecorder(int size) {
+			this.flightRecorderSize = size;
+			return this;
+		}
+
+		/**
+		 * Keeps the most recent exchanges and logs them all once the given number of 5xx or failed exchanges happens
+		 * within the window.
+		 */
+		public Builder flightRecorder(int size, int errorBurst, long errorWindow, TimeUnit unit) {
+			requireNonNull(unit, "unit must not be null");
+			this.flightRecorderSize = size;
+			this.flightRecorderErrorBurst = errorBurst;
+			this.flightRecorderErrorWindowMillis = unit.toMillis(errorWindow);
+			return this;
+		}
+
+		Builder copy() {
+			try {
+				Builder copy = (Builder) super.clone();
+				copy.sampleRouteLimits = new LinkedHashMap<>(sampleRouteLimits);
+				return copy;
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Applies the parameters that can be changed at runtime, see {@link LoggingConfig#PARAMETERS}.
+		 */
+		Builder parameters(Function<String, String> parameters) {
+			String maxContentSizeParam = parameters.apply("maxContentSize");
+			if (maxContentSizeParam != null) {
+				this.maxContentSize = Integer.parseInt(maxContentSizeParam.trim());
+			}
+
+			String includedPathsParam = parameters.apply("includedPaths");
+			if (isNotBlank(includedPathsParam)) {
+				this.includedPaths = new LinkedHashSet<>(splitList(includedPathsParam));
+			}
+
+			String excludedPathsParam = parameters.apply("excludedPaths");
+			if (isNotBlank(excludedPathsParam)) {
+				this.excludedPaths = new LinkedHashSet<>(splitList(excludedPathsParam));
+			}
+
+			String aggregatedPathsParam = parameters.apply("aggregatedPaths");
+			if (isNotBlank(aggregatedPathsParam)) {
+				this.aggregatedPaths = new LinkedHashSet<>(splitList(aggregatedPathsParam));
+			}
+
+			String capturedContentTypesParam = parameters.apply("capturedContentTypes");
+			if (isNotBlank(capturedContentTypesParam)) {
+				this.capturedContentTypes = new LinkedHashSet<>(splitList(capturedContentTypesParam));
+			}
+
+			String skippedContentTypesParam = parameters.apply("skippedContentTypes");
+			if (isNotBlank(skippedContentTypesParam)) {
+				this.skippedContentTypes = new LinkedHashSet<>(splitList(skippedContentTypesParam));
+			}
+
+			String maxCapturedContentLengthParam = parameters.apply("maxCapturedContentLength");
+			if (isNotBlank(maxCapturedContentLengthParam)) {
+				this.maxCapturedContentLength = Long.parseLong(maxCapturedContentLengthParam.trim());
+			}
+
+			String includedHeadersParam = parameters.apply("includedHeaders");
+			if (includedHeadersParam != null) {
+				this.includedHeaders = new LinkedHashSet<>(splitList(includedHeadersParam));
+			}
+
+			String excludedHeadersParam = parameters.apply("excludedHeaders");
+			if (excludedHeadersParam != null) {
+				this.excludedHeaders = new LinkedHashSet<>(splitList(excludedHeadersParam));
+			}
+
+			String redactedHeadersParam = parameters.apply("redactedHeaders");
+			if (redactedHeadersParam != null) {
+				this.redactedHeaders = new LinkedHashSet<>(splitList(redactedHeadersParam));
+			}
+
+			String redactedParamsParam = parameters.apply("redactedParams");
+			if (redactedParamsParam != null) {
+				this.redactedParams = new LinkedHashSet<>(splitList(redactedParamsParam));
+			}
+
+			String redactedJsonFieldsParam = parameters.apply("redactedJsonFields");
+			if (redactedJsonFieldsParam != null) {
+				this.redactedJsonFields = new LinkedHashSet<>(splitList(redactedJsonFieldsParam));
+			}
+
+			String sampleRateParam = parameters.apply("sampleRate");
+			if (isNotBlank(sampleRateParam)) {
+				this.sampleRate = Double.parseDouble(sampleRateParam.trim());
+			}
+
+			String sampleLimitParam = parameters.apply("sampleLimit");
+			if (isNotBlank(sampleLimitParam)) {
+				this.sampleLimit = Integer.parseInt(sampleLimitParam.trim());
+			}
+
+			String sampleRouteLimitsParam = parameters.apply("sampleRouteLimits");
+			if (isNotBlank(sampleRouteLimitsParam)) {
+				Map<String, Integer> routeLimits = new LinkedHashMap<>();
+				for (String routeLimit : splitList(sampleRouteLimitsParam)) {
+					String[] parts = routeLimit.split("\\s*=\\s*", 2);
+					if (parts.length != 2) {
+						throw new IllegalArgumentException("sampleRouteLimits entry must be pattern=limit: " + routeLimit);
+					}
+					routeLimits.put(parts[0], Integer.parseInt(parts[1]));
+				}
+				this.sampleRouteLimits = routeLimits;
+			}
+
+			String tailRetentionParam = parameters.apply("tailRetention");
+			if (isNotBlank(tailRetentionParam)) {
+				this.tailRetention = Boolean.parseBoolean(tailRetentionParam.trim());
+			}
+
+			String tailSlowThresholdParam = parameters.apply("tailSlowThreshold");
+			if (isNotBlank(tailSlowThresholdParam)) {
+				this.tailSlowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(tailSlowThresholdParam.trim()));
+			}
+
+			String tailErrorStatusParam = parameters.apply("tailErrorStatus");
+			if (isNotBlank(tailErrorStatusParam)) {
+				this.tailErrorStatus = Integer.parseInt(tailErrorStatusParam.trim());
+			}
+
+			String tailSummaryParam = parameters.apply("tailSummary");
+			if (isNotBlank(tailSummaryParam)) {
+				this.tailSummary = Boolean.parseBoolean(tailSummaryParam.trim());
+			}
+
+			String requestPrefixParam = parameters.apply("requestPrefix");
+			if (isNotBlank(requestPrefixParam)) {
+				this.requestPrefix = requestPrefixParam;
+			}
+
+			String responsePrefixParam = parameters.apply("responsePrefix");
+			if (isNotBlank(responsePrefixParam)) {
+				this.responsePrefix = responsePrefixParam;
+			}
+
+			String requestMarkerParam = parameters.apply("requestMarker");
+			if (isNotBlank(requestMarkerParam)) {
+				this.requestMarker = MarkerFactory.getMarker(requestMarkerParam);
+			}
+
+			String responseMarkerParam = parameters.apply("responseMarker");
+			if (isNotBlank(responseMarkerParam)) {
+				this.responseMarker = MarkerFactory.getMarker(responseMarkerParam);
+			}
+
+			String combinedExchangeParam = parameters.apply("combinedExchange");
+			if (isNotBlank(combinedExchangeParam)) {
+				this.combinedExchange = Boolean.parseBoolean(combinedExchangeParam.trim());
+			}
+
+			String exchangePrefixParam = parameters.apply("exchangePrefix");
+			if (isNotBlank(exchangePrefixParam)) {
+				this.exchangePrefix = exchangePrefixParam;
+			}
+
+			String exchangeMarkerParam = parameters.apply("exchangeMarker");
+			if (isNotBlank(exchangeMarkerParam)) {
+				this.exchangeMarker = MarkerFactory.getMarker(exchangeMarkerParam);
+			}
+
+			String disablePrefixParam = parameters.apply("disablePrefix");
+			if (isNotBlank(disablePrefixParam)) {
+				this.disablePrefix = Boolean.valueOf(disablePrefixParam);
+			}
+
+			String disableMarkerParam = parameters.apply("disableMarker");
+			if (isNotBlank(disableMarkerParam)) {
+				this.disableMarker = Boolean.valueOf(disableMarkerParam);
+			}
+
+			String captureLevelParam = parameters.apply("captureLevel");
+			if (isNotBlank(captureLevelParam)) {
+				this.captureLevel = CaptureLevel.valueOf(captureLevelParam.trim().toUpperCase(Locale.ROOT));
+			}
+
+			String bodyDigestParam = parameters.apply("bodyDigest");
+			if (bodyDigestParam != null) {
+				this.bodyDigest = isNotBlank(bodyDigestParam) ? bodyDigestParam.trim() : null;
+			}
+
+			String spillThresholdParam = parameters.apply("spillThreshold");
+			if (isNotBlank(spillThresholdParam)) {
+				this.spillThreshold = Integer.parseInt(spillThresholdParam.trim());
+			}
+
+			String spillDirectoryParam = parameters.apply("spillDirectory");
+			if (isNotBlank(spillDirectoryParam)) {
+				this.spillDirectory = Paths.get(spillDirectoryParam.trim());
+			}
+			return this;
+		}
+
+		/**
+		 * Applies the init parameters of resources owned by the filter, which cannot be changed at runtime. The
+		 * {@code metrics} and {@code control} MBeans are registered under the filter name.
+		 */
+		Builder resources(Function<String, String> parameters, String filterName) {
+			String bufferPoolSizeParam = parameters.apply("bufferPoolSize");
+			if (isNotBlank(bufferPoolSizeParam)) {
+				this.bufferPoolSize = Integer.parseInt(bufferPoolSizeParam.trim());
+			}
+
+			String bufferPoolDirectParam = parameters.apply("bufferPoolDirect");
+			if (isNotBlank(bufferPoolDirectParam)) {
+				this.bufferPoolDirect = Boolean.parseBoolean(bufferPoolDirectParam.trim());
+			}
+
+			String binaryLogDirectoryParam = parameters.apply("binaryLogDirectory");
+			if (isNotBlank(binaryLogDirectoryParam)) {
+				this.binaryLogDirectory = Paths.get(binaryLogDirectoryParam.trim());
+			}
+
+			String binaryLogSegmentSizeParam = parameters.apply("binaryLogSegmentSize");
+			if (isNotBlank(binaryLogSegmentSizeParam)) {
+				this.binaryLogSegmentSize = Integer.parseInt(binaryLogSegmentSizeParam.trim());
+			}
+
+			String binaryLogMaxSegmentsParam = parameters.apply("binaryLogMaxSegments");
+			if (isNotBlank(binaryLogMaxSegmentsParam)) {
+				this.binaryLogMaxSegments = Integer.parseInt(binaryLogMaxSegmentsParam.trim());
+			}
+
+			String metricsParam = parameters.apply("metrics");
+			if (isNotBlank(metricsParam)) {
+				this.metricsName = Boolean.parseBoolean(metricsParam.trim()) ? resourceName(filterName) : null;
+			}
+
+			String asyncQueueSizeParam = parameters.apply("asyncQueueSize");
+			if (isNotBlank(asyncQueueSizeParam)) {
+				this.asyncQueueSize = Integer.parseInt(asyncQueueSizeParam.trim());
+			}
+
+			String asyncWorkersParam = parameters.apply("asyncWorkers");
+			if (isNotBlank(asyncWorkersParam)) {
+				this.asyncWorkers = Integer.parseInt(asyncWorkersParam.trim());
+			}
+
+			String asyncOverflowPolicyParam = parameters.apply("asyncOverflowPolicy");
+			if (isNotBlank(asyncOverflowPolicyParam)) {
+				this.asyncOverflowPolicy = OverflowPolicy.valueOf(asyncOverflowPolicyParam.trim().toUpperCase(Locale.ROOT));
+			}
+
+			String governorOverheadThresholdParam = parameters.apply("governorOverheadThreshold");
+			if (isNotBlank(governorOverheadThresholdParam)) {
+				this.governorOverheadThresholdNanos = TimeUnit.MICROSECONDS.toNanos(Long.parseLong(governorOverheadThresholdParam.trim()));
+			}
+
+			String governorQueueThresholdParam = parameters.apply("governorQueueThreshold");
+			if (isNotBlank(governorQueueThresholdParam)) {
+				this.governorQueueThreshold = Double.parseDouble(governorQueueThresholdParam.trim());
+			}
+
+			String governorHeapThresholdParam = parameters.apply("governorHeapThreshold");
+			if (isNotBlank(governorHeapThresholdParam)) {
+				this.governorHeapThreshold = Double.parseDouble(governorHeapThresholdParam.trim());
+			}
+
+			String aggregationWindowParam = parameters.apply("aggregationWindow");
+			if (isNotBlank(aggregationWindowParam)) {
+				this.aggregationWindowMillis = Long.parseLong(aggregationWindowParam.trim());
+			}
+
+			String flightRecorderSizeParam = parameters.apply("flightRecorderSize");
+			if (isNotBlank(flightRecorderSizeParam)) {
+				this.flightRecorderSize = Integer.parseInt(flightRecorderSizeParam.trim());
+			}
+
+			String flightRecorderErrorBurstParam = parameters.apply("flightRecorderErrorBurst");
+			if (isNotBlank(flightRecorderErrorBurstParam)) {
+				this.flightRecorderErrorBurst = Integer.parseInt(flightRecorderErrorBurstParam.trim());
+			}
+
+			String flightRecorderErrorWindowParam = parameters.apply("flightRecorderErrorWindow");
+			if (isNotBlank(flightRecorderErrorWindowParam)) {
+				this.flightRecorderErrorWindowMillis = Long.parseLong(flightRecorderErrorWindowParam.trim());
+			}
+
+			String controlParam = parameters.apply("control");
+			if (isNotBlank(controlParam)) {
+				this.controlName = Boolean.parseBoolean(controlParam.trim()) ? resourceName(filterName) : null;
+			}
+
+			String configFileParam = parameters.apply("configFile");
+			if (isNotBlank(configFileParam)) {
+				this.configFile = Paths.get(configFileParam.trim());
+			}
+
+			String configFileIntervalParam = parameters.apply("configFileInterval");
+			if (isNotBlank(configFileIntervalParam)) {
+				this.configFileIntervalMillis = Long.parseLong(configFileIntervalParam.trim());
+			}
+			return this;
+		}
+
+		private String resourceName(String filterName) {
+			return isNotBlank(filterName) ? filterName : loggerName;
 		}
 
 		public LoggingFilter build() {
@@ -0,0 +1,84 @@
+package javax.servlet.filter.logging.aggregation;
+
+/**
+ * Exchanges of one method, route and status aggregated over a window.
+ */
+public final class ExchangeAggregate {
+
+	private final String method;
+
+	private final String route;
+
+	private final int status;
+
+	private final long count;
+
+	private final long errors;
+
+	private final long minDurationNanos;
+
+	private final long meanDurationNanos;
+
+	private final long maxDurationNanos;
+
+	private final long requestBytes;
+
+	private final long responseBytes;
+
+	public ExchangeAggregate(String method, String route, int status, long count, long errors, long minDurationNanos,
+			long meanDurationNanos, long maxDurationNanos, long requestBytes, long responseBytes) {
+		this.method = method;
+		this.route = route;
+		this.status = status;
+		this.count = count;
+		this.errors = errors;
+		this.minDurationNanos = minDurationNanos;
+		this.meanDurationNanos = meanDurationNanos;
+		this.maxDurationNanos = maxDurationNanos;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getRoute() {
+		return route;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of exchanges that failed with an exception, an asynchronous error or a timeout.
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	public long getMinDurationNanos() {
+		return minDurationNanos;
+	}
+
+	public long getMeanDurationNanos() {
+		return meanDurationNanos;
+	}
+
+	public long getMaxDurationNanos() {
+		return maxDurationNanos;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+}
@@ -0,0 +1,192 @@
+package javax.servlet.filter.logging.aggregation;
+
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Counts exchanges per method, route and status in a concurrent map of striped counters and hands one
+ * {@link ExchangeAggregate} per key to the handler at the end of every window. Recording takes no lock: a flush swaps
+ * in the map of the next window and waits for the few exchanges still being added to the detached one, so every
+ * exchange lands whole in exactly one window. Each window only holds the keys used during it.
+ */
+public class ExchangeAggregator implements AutoCloseable {
+
+	private static final int MAX_KEYS = 1000;
+
+	private static final String OTHER_ROUTE = "[OTHER]";
+
+	private final AtomicReference<Window> window = new AtomicReference<>(new Window());
+
+	private final Consumer<ExchangeAggregate> handler;
+
+	private final ScheduledExecutorService flusher;
+
+	public ExchangeAggregator(long window, TimeUnit unit, Consumer<ExchangeAggregate> handler) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("window must be positive");
+		}
+		this.handler = Objects.requireNonNull(handler, "handler must not be null");
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "logging-filter-aggregator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleAtFixedRate(this::flush, window, window, unit);
+	}
+
+	public void record(String method, String route, int status, long durationNanos, long requestBytes, long responseBytes, boolean failed) {
+		while (true) {
+			Window current = window.get();
+			current.started.increment();
+			try {
+				if (window.get() == current) {
+					current.getAggregate(method, route, status).add(durationNanos, requestBytes, responseBytes, failed);
+					return;
+				}
+			} finally {
+				current.finished.increment();
+			}
+		}
+	}
+
+	/**
+	 * Hands the exchanges recorded since the previous flush to the handler. Called at the end of every window.
+	 */
+	public synchronized void flush() {
+		Window detached = window.getAndSet(new Window());
+		detached.awaitWriters();
+		for (Entry<Key, Aggregate> entry : detached.aggregates.entrySet()) {
+			Key key = entry.getKey();
+			Aggregate aggregate = entry.getValue();
+			long count = aggregate.count.sum();
+			if (count == 0) {
+				continue;
+			}
+			try {
+				handler.accept(new ExchangeAggregate(key.method, key.route, key.status, count, aggregate.errors.sum(),
+						aggregate.minDuration.get(), aggregate.totalDuration.sum() / count, aggregate.maxDuration.get(),
+						aggregate.requestBytes.sum(), aggregate.responseBytes.sum()));
+			} catch (RuntimeException e) {
+				// a failing handler must not stop the following windows
+			}
+		}
+	}
+
+	/**
+	 * Stops the window timer and flushes the current window.
+	 */
+	@Override
+	public void close() {
+		flusher.shutdownNow();
+		flush();
+	}
+
+	private static final class Key {
+
+		private final String method;
+
+		private final String route;
+
+		private final int status;
+
+		private final int hash;
+
+		private Key(String method, String route, int status) {
+			this.method = method;
+			this.route = route;
+			this.status = status;
+			this.hash = (31 * Objects.hashCode(method) + Objects.hashCode(route)) * 31 + status;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return status == key.status && Objects.equals(method, key.method) && Objects.equals(route, key.route);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Aggregates of one window. A writer counts itself in {@code started} before checking that the window is still
+	 * current and in {@code finished} when done, so the flush knows when the detached window is no longer written.
+	 */
+	private static final class Window {
+
+		private final ConcurrentMap<Key, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+		private final LongAdder started = new LongAdder();
+
+		private final LongAdder finished = new LongAdder();
+
+		private Aggregate getAggregate(String method, String route, int status) {
+			Key key = new Key(method, route, status);
+			Aggregate aggregate = aggregates.get(key);
+			if (aggregate == null) {
+				if (aggregates.size() >= MAX_KEYS) {
+					key = new Key(method, OTHER_ROUTE, status);
+				}
+				aggregate = aggregates.computeIfAbsent(key, k -> new Aggregate());
+			}
+			return aggregate;
+		}
+
+		private void awaitWriters() {
+			// finished is read first: every finished writer is then also seen as started
+			while (finished.sum() != started.sum()) {
+				Thread.onSpinWait();
+			}
+		}
+	}
+
+	private static final class Aggregate {
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder errors = new LongAdder();
+
+		private final LongAdder totalDuration = new LongAdder();
+
+		private final LongAccumulator minDuration = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+		private final LongAccumulator maxDuration = new LongAccumulator(Math::max, 0);
+
+		private final LongAdder requestBytes = new LongAdder();
+
+		private final LongAdder responseBytes = new LongAdder();
+
+		private void add(long durationNanos, long requestBytes, long responseBytes, boolean failed) {
+			count.increment();
+			if (failed) {
+				errors.increment();
+			}
+			totalDuration.add(durationNanos);
+			minDuration.accumulate(durationNanos);
+			maxDuration.accumulate(durationNanos);
+			if (requestBytes > 0) {
+				this.requestBytes.add(requestBytes);
+			}
+			if (responseBytes > 0) {
+				this.responseBytes.add(responseBytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package javax.servlet.filter.logging.async;
+
+import javax.servlet.filter.logging.entity.LoggingExchange;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+public class AsyncLogDispatcher implements AutoCloseable {
+
+	/**
+	 * Body of records submitted while {@link #dropBody()} holds.
+	 */
+	public static final String DROPPED_BODY = "[DROPPED]";
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+	private final BoundedRingBuffer<Entry> queue;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final Consumer<LoggingExchange> handler;
+
+	private final List<Thread> workers;
+
+	private final LongAdder enqueued = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder droppedBodies = new LongAdder();
+
+	private final LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0);
+
+	private volatile long lastLagNanos;
+
+	private volatile boolean running = true;
+
+	public AsyncLogDispatcher(int queueSize, int workerCount, OverflowPolicy overflowPolicy, Consumer<LoggingExchange> handler) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("workerCount must be positive");
+		}
+		this.queue = new BoundedRingBuffer<>(queueSize);
+		this.overflowPolicy = requireNonNull(overflowPolicy, "overflowPolicy must not be null");
+		this.handler = requireNonNull(handler, "handler must not be null");
+		this.workers = new ArrayList<>(workerCount);
+		for (int i = 0; i < workerCount; i++) {
+			Thread worker = new Thread(this::work, "logging-filter-async-" + i);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	public boolean submit(LoggingExchange exchange) {
+		requireNonNull(exchange, "exchange must not be null");
+		Entry entry = new Entry(exchange, System.nanoTime());
+		while (!queue.offer(entry)) {
+			if (overflowPolicy != OverflowPolicy.BLOCK || !running) {
+				dropped.increment();
+				return false;
+			}
+			LockSupport.parkNanos(IDLE_PARK_NANOS);
+		}
+		enqueued.increment();
+		return true;
+	}
+
+	/**
+	 * Returns whether the next record has to be submitted without bodies because the queue is filled over its
+	 * high-water mark under {@link OverflowPolicy#DROP_BODY}, and counts it as such. Asked before the record is built, so
+	 * a dropped body is never decoded on the request thread.
+	 */
+	public boolean dropBody() {
+		if (overflowPolicy != OverflowPolicy.DROP_BODY || queue.size() < queue.capacity() / 2) {
+			return false;
+		}
+		droppedBodies.increment();
+		return true;
+	}
+
+	public long getEnqueuedCount() {
+		return enqueued.sum();
+	}
+
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	public long getDroppedBodyCount() {
+		return droppedBodies.sum();
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	public int getQueueCapacity() {
+		return queue.capacity();
+	}
+
+	public long getLastLagNanos() {
+		return lastLagNanos;
+	}
+
+	public long getMaxLagNanos() {
+		return maxLagNanos.get();
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+		for (Thread worker : workers) {
+			try {
+				worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void work() {
+		while (true) {
+			Entry entry = queue.poll();
+			if (entry == null) {
+				if (!running) {
+					return;
+				}
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+				continue;
+			}
+			long lag = System.nanoTime() - entry.enqueuedNanos;
+			lastLagNanos = lag;
+			maxLagNanos.accumulate(lag);
+			try {
+				handler.accept(entry.exchange);
+			} catch (RuntimeException e) {
+				// a failing record must not stop the worker, the handler reports its own failures
+			}
+		}
+	}
+
+	private static final class Entry {
+
+		private final LoggingExchange exchange;
+
+		private final long enqueuedNanos;
+
+		private Entry(LoggingExchange exchange, long enqueuedNanos) {
+			this.exchange = exchange;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
+}
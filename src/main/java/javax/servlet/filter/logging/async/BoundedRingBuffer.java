@@ -0,0 +1,84 @@
+package javax.servlet.filter.logging.async;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free bounded multi-producer multi-consumer queue with a sequence number per slot.
+ */
+final class BoundedRingBuffer<E> {
+
+	private final int mask;
+
+	private final AtomicReferenceArray<E> elements;
+
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong head = new AtomicLong();
+
+	private final AtomicLong tail = new AtomicLong();
+
+	BoundedRingBuffer(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+		}
+		int size = Integer.highestOneBit(capacity - 1 > 0 ? (capacity - 1) << 1 : 1);
+		this.mask = size - 1;
+		this.elements = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	boolean offer(E element) {
+		long position = tail.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					elements.set(index, element);
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	E poll() {
+		long position = head.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					E element = elements.get(index);
+					elements.set(index, null);
+					sequences.set(index, position + mask + 1);
+					return element;
+				}
+				position = head.get();
+			} else if (difference < 0) {
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+	}
+
+	int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, capacity()));
+	}
+
+	int capacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,20 @@
+package javax.servlet.filter.logging.async;
+
+public enum OverflowPolicy {
+
+	/**
+	 * Records arriving at a full queue are dropped.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Records arriving at a queue filled over its high-water mark lose their bodies, records arriving at a full queue
+	 * are dropped.
+	 */
+	DROP_BODY,
+
+	/**
+	 * Request threads wait until the queue has room again.
+	 */
+	BLOCK
+}
@@ -0,0 +1,180 @@
+package javax.servlet.filter.logging.binary;
+
+import javax.servlet.filter.logging.entity.LoggingExchange;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Appends exchanges as length-prefixed binary records to rolling memory-mapped segment files, so the request thread
+ * only copies strings into a mapped buffer. Segments are named {@code exchanges-<sequence>.seg} and are turned into
+ * JSON by {@link ExchangeLogConverter}. When {@code maxSegments} is positive, the oldest segments are deleted.
+ * <p>
+ * Writing mapped pages back to disk is left to the operating system until {@link #close()}. A segment that cannot be
+ * created, on a full disk for example, drops the records appended in the meantime and is retried after a pause,
+ * appending never fails the request.
+ */
+public class BinaryExchangeLog implements AutoCloseable {
+
+	static final String SEGMENT_PREFIX = "exchanges-";
+
+	static final String SEGMENT_SUFFIX = ".seg";
+
+	private static final int INITIAL_RECORD_CAPACITY = 4096;
+
+	private static final int MAX_CACHED_RECORD_CAPACITY = 64 * 1024;
+
+	private static final long ROLL_RETRY_MILLIS = 1000;
+
+	private final ThreadLocal<ByteBuffer> recordBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_RECORD_CAPACITY));
+
+	private final Path directory;
+
+	private final int segmentSize;
+
+	private final int maxSegments;
+
+	private final Deque<Path> segments = new ArrayDeque<>();
+
+	private final LongAdder written = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private long sequence;
+
+	private MappedByteBuffer segment;
+
+	private long rollRetryMillis;
+
+	private boolean closed;
+
+	public BinaryExchangeLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+		this.directory = requireNonNull(directory, "directory must not be null");
+		if (segmentSize <= ExchangeRecords.SEGMENT_HEADER_SIZE + ExchangeRecords.LENGTH_SIZE) {
+			throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+		}
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		Files.createDirectories(directory);
+		for (Path existing : listSegments(directory)) {
+			segments.addLast(existing);
+			sequence = Math.max(sequence, parseSequence(existing) + 1);
+		}
+		roll();
+	}
+
+	public boolean append(LoggingExchange exchange) {
+		return append(exchange, false);
+	}
+
+	/**
+	 * Appends an exchange, remembering whether it is logged as one combined record or as a request and a response.
+	 */
+	public boolean append(LoggingExchange exchange, boolean combined) {
+		requireNonNull(exchange, "exchange must not be null");
+		ByteBuffer record = ExchangeRecords.encode(recordBuffers.get(), System.currentTimeMillis(), combined, exchange);
+		recordBuffers.set(record.capacity() > MAX_CACHED_RECORD_CAPACITY ? ByteBuffer.allocate(INITIAL_RECORD_CAPACITY) : record);
+		int length = record.remaining();
+		if (length + ExchangeRecords.LENGTH_SIZE * 2 > segmentSize - ExchangeRecords.SEGMENT_HEADER_SIZE) {
+			dropped.increment();
+			return false;
+		}
+		synchronized (this) {
+			if (closed) {
+				dropped.increment();
+				return false;
+			}
+			if (segment.remaining() < length + ExchangeRecords.LENGTH_SIZE * 2 && !tryRoll()) {
+				dropped.increment();
+				return false;
+			}
+			segment.putInt(length);
+			segment.put(record);
+		}
+		written.increment();
+		return true;
+	}
+
+	public long getWrittenCount() {
+		return written.sum();
+	}
+
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	public synchronized List<Path> getSegments() {
+		return new ArrayList<>(segments);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!closed) {
+			closed = true;
+			segment.force();
+			segment = null;
+		}
+	}
+
+	private boolean tryRoll() {
+		long now = System.currentTimeMillis();
+		if (now < rollRetryMillis) {
+			return false;
+		}
+		try {
+			roll();
+			return true;
+		} catch (IOException e) {
+			rollRetryMillis = now + ROLL_RETRY_MILLIS;
+			return false;
+		}
+	}
+
+	private void roll() throws IOException {
+		Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence++, SEGMENT_SUFFIX));
+		try (FileChannel channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+			segment = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+		}
+		segment.putInt(ExchangeRecords.MAGIC);
+		segment.putInt(ExchangeRecords.VERSION);
+		segments.addLast(file);
+		while (maxSegments > 0 && segments.size() > maxSegments) {
+			Files.deleteIfExists(segments.removeFirst());
+		}
+	}
+
+	static List<Path> listSegments(Path directory) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		files.sort(null);
+		return files;
+	}
+
+	private static long parseSequence(Path segment) {
+		String name = segment.getFileName().toString();
+		try {
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package javax.servlet.filter.logging.binary;
+
+import javax.servlet.filter.logging.entity.LoggingExchange;
+import javax.servlet.filter.logging.json.ExchangeJsonEncoder;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Command line tool turning segments written by {@link BinaryExchangeLog} into the JSON descriptions the filter logs.
+ * Every exchange becomes a request and a response line prefixed with the record timestamp, or one exchange line with
+ * the correlation id and duration when it was appended as a combined exchange.
+ * <pre>
+ * java -cp servlet-logging-filter.jar:jackson-core.jar javax.servlet.filter.logging.binary.ExchangeLogConverter &lt;directory or segment&gt;...
+ * </pre>
+ */
+public final class ExchangeLogConverter {
+
+	private static final String REQUEST_PREFIX = "REQUEST: ";
+
+	private static final String RESPONSE_PREFIX = "RESPONSE: ";
+
+	private static final String EXCHANGE_PREFIX = "EXCHANGE: ";
+
+	private final ExchangeJsonEncoder jsonEncoder = new ExchangeJsonEncoder();
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: ExchangeLogConverter <directory or segment>...");
+			System.exit(2);
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+		ExchangeLogConverter converter = new ExchangeLogConverter();
+		for (String arg : args) {
+			Path path = Paths.get(arg);
+			List<Path> segments = Files.isDirectory(path) ? BinaryExchangeLog.listSegments(path) : List.of(path);
+			for (Path segment : segments) {
+				converter.convert(segment, out);
+			}
+		}
+		out.flush();
+	}
+
+	public long convert(Path segment, Writer out) throws IOException {
+		long converted = 0;
+		for (ByteBuffer record : readRecords(segment)) {
+			long timestampMillis = ExchangeRecords.decodeTimestamp(record);
+			boolean combined = ExchangeRecords.decodeCombined(record);
+			LoggingExchange exchange = ExchangeRecords.decode(record);
+			String timestamp = Instant.ofEpochMilli(timestampMillis).toString();
+			if (combined) {
+				out.write(timestamp);
+				out.write(' ');
+				out.write(jsonEncoder.encode(EXCHANGE_PREFIX, exchange));
+				out.write(System.lineSeparator());
+				converted++;
+				continue;
+			}
+			out.write(timestamp);
+			out.write(' ');
+			out.write(jsonEncoder.encode(REQUEST_PREFIX, exchange.getRequest()));
+			out.write(System.lineSeparator());
+			out.write(timestamp);
+			out.write(' ');
+			out.write(jsonEncoder.encode(RESPONSE_PREFIX, exchange.getResponse()));
+			out.write(System.lineSeparator());
+			converted++;
+		}
+		return converted;
+	}
+
+	static List<ByteBuffer> readRecords(Path segment) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(segment, READ)) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.remaining() < ExchangeRecords.SEGMENT_HEADER_SIZE || buffer.getInt() != ExchangeRecords.MAGIC) {
+			throw new IOException("Not an exchange log segment: " + segment);
+		}
+		int version = buffer.getInt();
+		if (version != ExchangeRecords.VERSION) {
+			throw new IOException("Unsupported exchange log version " + version + ": " + segment);
+		}
+		List<ByteBuffer> records = new ArrayList<>();
+		while (buffer.remaining() >= ExchangeRecords.LENGTH_SIZE) {
+			int length = buffer.getInt();
+			if (length <= 0 || length > buffer.remaining()) {
+				break;
+			}
+			ByteBuffer record = buffer.slice();
+			record.limit(length);
+			buffer.position(buffer.position() + length);
+			records.add(record);
+		}
+		return records;
+	}
+}
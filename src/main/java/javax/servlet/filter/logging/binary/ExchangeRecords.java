@@ -0,0 +1,226 @@
+package javax.servlet.filter.logging.binary;
+
+import javax.servlet.filter.logging.entity.LoggingExchange;
+import javax.servlet.filter.logging.entity.LoggingRequest;
+import javax.servlet.filter.logging.entity.LoggingResponse;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Binary layout of segments and exchange records. A segment starts with {@link #MAGIC} and {@link #VERSION} followed
+ * by records, each one prefixed with its length. A zero length marks the end of the written part of a segment.
+ * Strings are UTF-8 prefixed with their byte length, -1 stands for null, maps are prefixed with their size and header
+ * values are lists prefixed with their size. Body sizes are longs, -1 stands for null. A record starts with its
+ * timestamp, a flags byte telling whether the exchange was logged as one combined record, the exchange id and the
+ * duration in milliseconds.
+ */
+final class ExchangeRecords {
+
+	static final int MAGIC = 0x4C465831;
+
+	static final int VERSION = 5;
+
+	static final int SEGMENT_HEADER_SIZE = 8;
+
+	static final int LENGTH_SIZE = 4;
+
+	private static final int NULL = -1;
+
+	private static final byte COMBINED = 1;
+
+	private ExchangeRecords() {
+	}
+
+	static ByteBuffer encode(ByteBuffer buffer, long timestampMillis, boolean combined, LoggingExchange exchange) {
+		buffer.clear();
+		buffer = ensureRemaining(buffer, Long.BYTES + 1);
+		buffer.putLong(timestampMillis);
+		buffer.put(combined ? COMBINED : 0);
+		buffer = putString(buffer, exchange.getId());
+		buffer = ensureRemaining(buffer, Long.BYTES);
+		buffer.putLong(exchange.getDurationMillis());
+		LoggingRequest request = exchange.getRequest();
+		buffer = putString(buffer, request.getSender());
+		buffer = putString(buffer, request.getMethod());
+		buffer = putString(buffer, request.getPath());
+		buffer = putMap(buffer, request.getParams());
+		buffer = putMultiMap(buffer, request.getHeaders());
+		buffer = putString(buffer, request.getBody());
+		buffer = putDigest(buffer, request.getBodyHash(), request.getBodySize());
+		LoggingResponse response = exchange.getResponse();
+		buffer = ensureRemaining(buffer, Integer.BYTES);
+		buffer.putInt(response.getStatus());
+		buffer = putMultiMap(buffer, response.getHeaders());
+		buffer = putString(buffer, response.getBody());
+		buffer = putDigest(buffer, response.getBodyHash(), response.getBodySize());
+		buffer.flip();
+		return buffer;
+	}
+
+	static long decodeTimestamp(ByteBuffer record) {
+		return record.getLong(record.position());
+	}
+
+	static boolean decodeCombined(ByteBuffer record) {
+		return (record.get(record.position() + Long.BYTES) & COMBINED) != 0;
+	}
+
+	static LoggingExchange decode(ByteBuffer record) {
+		try {
+			record.getLong();
+			record.get();
+			String id = getString(record);
+			long durationMillis = record.getLong();
+			LoggingRequest request = new LoggingRequest();
+			request.setSender(getString(record));
+			request.setMethod(getString(record));
+			request.setPath(getString(record));
+			request.setParams(getMap(record));
+			request.setHeaders(getMultiMap(record));
+			request.setBody(getString(record));
+			request.setBodyHash(getString(record));
+			request.setBodySize(getBodySize(record));
+			LoggingResponse response = new LoggingResponse();
+			response.setStatus(record.getInt());
+			response.setHeaders(getMultiMap(record));
+			response.setBody(getString(record));
+			response.setBodyHash(getString(record));
+			response.setBodySize(getBodySize(record));
+			return new LoggingExchange(id, durationMillis, request, response);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IllegalStateException("Corrupted exchange record", e);
+		}
+	}
+
+	private static ByteBuffer putString(ByteBuffer buffer, String value) {
+		if (value == null) {
+			buffer = ensureRemaining(buffer, Integer.BYTES);
+			buffer.putInt(NULL);
+			return buffer;
+		}
+		byte[] bytes = value.getBytes(UTF_8);
+		buffer = ensureRemaining(buffer, Integer.BYTES + bytes.length);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+		return buffer;
+	}
+
+	private static ByteBuffer putDigest(ByteBuffer buffer, String bodyHash, Long bodySize) {
+		buffer = putString(buffer, bodyHash);
+		buffer = ensureRemaining(buffer, Long.BYTES);
+		buffer.putLong(bodySize != null ? bodySize : NULL);
+		return buffer;
+	}
+
+	private static ByteBuffer putMap(ByteBuffer buffer, Map<String, String> map) {
+		buffer = ensureRemaining(buffer, Integer.BYTES);
+		if (map == null) {
+			buffer.putInt(NULL);
+			return buffer;
+		}
+		buffer.putInt(map.size());
+		for (Entry<String, String> entry : map.entrySet()) {
+			buffer = putString(buffer, entry.getKey());
+			buffer = putString(buffer, entry.getValue());
+		}
+		return buffer;
+	}
+
+	private static ByteBuffer putMultiMap(ByteBuffer buffer, Map<String, List<String>> map) {
+		buffer = ensureRemaining(buffer, Integer.BYTES);
+		if (map == null) {
+			buffer.putInt(NULL);
+			return buffer;
+		}
+		buffer.putInt(map.size());
+		for (Entry<String, List<String>> entry : map.entrySet()) {
+			buffer = putString(buffer, entry.getKey());
+			List<String> values = entry.getValue();
+			buffer = ensureRemaining(buffer, Integer.BYTES);
+			buffer.putInt(values == null ? NULL : values.size());
+			if (values != null) {
+				for (String value : values) {
+					buffer = putString(buffer, value);
+				}
+			}
+		}
+		return buffer;
+	}
+
+	private static String getString(ByteBuffer record) {
+		int length = record.getInt();
+		if (length == NULL) {
+			return null;
+		}
+		if (length < 0 || length > record.remaining()) {
+			throw new IllegalArgumentException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		record.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static Map<String, String> getMap(ByteBuffer record) {
+		int size = getSize(record);
+		if (size == NULL) {
+			return null;
+		}
+		Map<String, String> map = new LinkedHashMap<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			map.put(getString(record), getString(record));
+		}
+		return map;
+	}
+
+	private static Map<String, List<String>> getMultiMap(ByteBuffer record) {
+		int size = getSize(record);
+		if (size == NULL) {
+			return null;
+		}
+		Map<String, List<String>> map = new LinkedHashMap<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			String name = getString(record);
+			int count = getSize(record);
+			List<String> values = null;
+			if (count != NULL) {
+				values = new ArrayList<>(count);
+				for (int j = 0; j < count; j++) {
+					values.add(getString(record));
+				}
+			}
+			map.put(name, values);
+		}
+		return map;
+	}
+
+	private static Long getBodySize(ByteBuffer record) {
+		long size = record.getLong();
+		return size == NULL ? null : size;
+	}
+
+	private static int getSize(ByteBuffer record) {
+		int size = record.getInt();
+		if (size < NULL || size > record.remaining()) {
+			throw new IllegalArgumentException("Invalid size " + size);
+		}
+		return size;
+	}
+
+	private static ByteBuffer ensureRemaining(ByteBuffer buffer, int required) {
+		if (buffer.remaining() >= required) {
+			return buffer;
+		}
+		int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max((long) buffer.capacity() << 1, (long) buffer.position() + required));
+		ByteBuffer grown = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
+	}
+}
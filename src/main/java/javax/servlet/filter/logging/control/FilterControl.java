@@ -0,0 +1,90 @@
+package javax.servlet.filter.logging.control;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.filter.logging.LoggingFilter;
+import javax.servlet.filter.logging.governor.CaptureLevel;
+import javax.servlet.filter.logging.governor.OverloadGovernor;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static javax.servlet.filter.logging.metrics.FilterMetrics.DOMAIN;
+
+/**
+ * Changes the settings of a running filter over JMX. Parameters set here take precedence over the watched
+ * configuration file and the init parameters, and resetting them falls back to those.
+ */
+public class FilterControl implements FilterControlMXBean {
+
+	private final LoggingFilter filter;
+
+	private ObjectName objectName;
+
+	public FilterControl(LoggingFilter filter) {
+		this.filter = filter;
+	}
+
+	public synchronized void register(String name) {
+		try {
+			ObjectName candidate = new ObjectName(DOMAIN + ":type=LoggingFilterControl,name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, candidate);
+			objectName = candidate;
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register control MBean " + name, e);
+		}
+	}
+
+	public synchronized void unregister() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				// already gone
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public String getCaptureLevel() {
+		return filter.getCaptureLevel().name();
+	}
+
+	@Override
+	public String getGovernorLevel() {
+		OverloadGovernor governor = filter.getGovernor();
+		return (governor != null ? governor.getLevel() : CaptureLevel.FULL).name();
+	}
+
+	@Override
+	public Map<String, String> getParameters() {
+		return filter.getParameters();
+	}
+
+	@Override
+	public void setParameter(String name, String value) {
+		filter.setParameter(name, value);
+	}
+
+	@Override
+	public void resetParameter(String name) {
+		filter.setParameter(name, null);
+	}
+
+	@Override
+	public void resetParameters() {
+		filter.resetParameters();
+	}
+
+	@Override
+	public void reloadConfigFile() {
+		filter.reloadConfigFile();
+	}
+
+	@Override
+	public String dumpFlightRecorder() {
+		return filter.dumpFlightRecorder();
+	}
+}
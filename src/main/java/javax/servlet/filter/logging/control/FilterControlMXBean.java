@@ -0,0 +1,22 @@
+package javax.servlet.filter.logging.control;
+
+import java.util.Map;
+
+public interface FilterControlMXBean {
+
+	String getCaptureLevel();
+
+	String getGovernorLevel();
+
+	Map<String, String> getParameters();
+
+	void setParameter(String name, String value);
+
+	void resetParameter(String name);
+
+	void resetParameters();
+
+	void reloadConfigFile();
+
+	String dumpFlightRecorder();
+}
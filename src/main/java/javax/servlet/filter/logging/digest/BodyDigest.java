@@ -0,0 +1,119 @@
+package javax.servlet.filter.logging.digest;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Hash and exact size of a body computed while it streams through a wrapper, so neither needs the body to be retained.
+ * The value is the algorithm name and the lowercase hex hash separated by a colon, e.g. {@code XXH64:44bc2cf5ad770999}.
+ */
+public abstract class BodyDigest {
+
+	public static final String XXH64 = "XXH64";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private long size;
+
+	private String value;
+
+	/**
+	 * Returns a factory of digests for {@value #XXH64}, or for any {@link MessageDigest} algorithm such as
+	 * {@code SHA-256}.
+	 *
+	 * @throws IllegalArgumentException if the algorithm is not available
+	 */
+	public static Supplier<BodyDigest> factory(String algorithm) {
+		String name = algorithm.trim();
+		if (XXH64.equals(name.toUpperCase(Locale.ROOT)) || "XXHASH64".equals(name.toUpperCase(Locale.ROOT))) {
+			return XxHash64Digest::new;
+		}
+		MessageDigest prototype;
+		try {
+			prototype = MessageDigest.getInstance(name);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException("Unknown body digest algorithm " + name, e);
+		}
+		return () -> new MessageBodyDigest(newMessageDigest(prototype));
+	}
+
+	private static MessageDigest newMessageDigest(MessageDigest prototype) {
+		try {
+			return (MessageDigest) prototype.clone();
+		} catch (CloneNotSupportedException e) {
+			try {
+				return MessageDigest.getInstance(prototype.getAlgorithm());
+			} catch (NoSuchAlgorithmException unavailable) {
+				throw new IllegalStateException(unavailable);
+			}
+		}
+	}
+
+	public final void update(int b) {
+		size++;
+		engineUpdate(b);
+	}
+
+	public final void update(byte[] b, int off, int len) {
+		size += len;
+		engineUpdate(b, off, len);
+	}
+
+	public final long getSize() {
+		return size;
+	}
+
+	/**
+	 * Finishes the hash of the bytes seen so far. Later updates do not change the value any more.
+	 */
+	public final String getValue() {
+		if (value == null) {
+			byte[] hash = engineDigest();
+			StringBuilder hex = new StringBuilder(getAlgorithm().length() + 1 + hash.length * 2).append(getAlgorithm()).append(':');
+			for (byte b : hash) {
+				hex.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+			}
+			value = hex.toString();
+		}
+		return value;
+	}
+
+	public abstract String getAlgorithm();
+
+	protected abstract void engineUpdate(int b);
+
+	protected abstract void engineUpdate(byte[] b, int off, int len);
+
+	protected abstract byte[] engineDigest();
+
+	private static final class MessageBodyDigest extends BodyDigest {
+
+		private final MessageDigest digest;
+
+		private MessageBodyDigest(MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		@Override
+		public String getAlgorithm() {
+			return digest.getAlgorithm();
+		}
+
+		@Override
+		protected void engineUpdate(int b) {
+			digest.update((byte) b);
+		}
+
+		@Override
+		protected void engineUpdate(byte[] b, int off, int len) {
+			digest.update(b, off, len);
+		}
+
+		@Override
+		protected byte[] engineDigest() {
+			return digest.digest();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package javax.servlet.filter.logging.digest;
+
+/**
+ * Streaming xxHash64 with seed 0. Input is consumed in 32 byte stripes, only the incomplete stripe is buffered.
+ */
+final class XxHash64Digest extends BodyDigest {
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	private static final int STRIPE = 32;
+
+	private final byte[] buffer = new byte[STRIPE];
+
+	private int buffered;
+
+	private long total;
+
+	private long v1 = PRIME1 + PRIME2;
+	private long v2 = PRIME2;
+	private long v3;
+	private long v4 = -PRIME1;
+
+	@Override
+	public String getAlgorithm() {
+		return XXH64;
+	}
+
+	@Override
+	protected void engineUpdate(int b) {
+		total++;
+		buffer[buffered++] = (byte) b;
+		if (buffered == STRIPE) {
+			consumeStripe(buffer, 0);
+			buffered = 0;
+		}
+	}
+
+	@Override
+	protected void engineUpdate(byte[] b, int off, int len) {
+		total += len;
+		int end = off + len;
+		if (buffered > 0) {
+			int fill = Math.min(STRIPE - buffered, len);
+			System.arraycopy(b, off, buffer, buffered, fill);
+			buffered += fill;
+			off += fill;
+			if (buffered < STRIPE) {
+				return;
+			}
+			consumeStripe(buffer, 0);
+			buffered = 0;
+		}
+		for (; off <= end - STRIPE; off += STRIPE) {
+			consumeStripe(b, off);
+		}
+		buffered = end - off;
+		System.arraycopy(b, off, buffer, 0, buffered);
+	}
+
+	@Override
+	protected byte[] engineDigest() {
+		long hash;
+		if (total >= STRIPE) {
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = mergeRound(hash, v1);
+			hash = mergeRound(hash, v2);
+			hash = mergeRound(hash, v3);
+			hash = mergeRound(hash, v4);
+		} else {
+			hash = PRIME5;
+		}
+		hash += total;
+		int i = 0;
+		for (; i + Long.BYTES <= buffered; i += Long.BYTES) {
+			hash ^= round(0, getLong(buffer, i));
+			hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+		}
+		if (i + Integer.BYTES <= buffered) {
+			hash ^= (getInt(buffer, i) & 0xFFFFFFFFL) * PRIME1;
+			hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+			i += Integer.BYTES;
+		}
+		for (; i < buffered; i++) {
+			hash ^= (buffer[i] & 0xFF) * PRIME5;
+			hash = Long.rotateLeft(hash, 11) * PRIME1;
+		}
+		hash ^= hash >>> 33;
+		hash *= PRIME2;
+		hash ^= hash >>> 29;
+		hash *= PRIME3;
+		hash ^= hash >>> 32;
+		byte[] digest = new byte[Long.BYTES];
+		for (int j = 0; j < Long.BYTES; j++) {
+			digest[j] = (byte) (hash >>> (56 - j * 8));
+		}
+		return digest;
+	}
+
+	private void consumeStripe(byte[] b, int off) {
+		v1 = round(v1, getLong(b, off));
+		v2 = round(v2, getLong(b, off + 8));
+		v3 = round(v3, getLong(b, off + 16));
+		v4 = round(v4, getLong(b, off + 24));
+	}
+
+	private static long round(long acc, long input) {
+		return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+	}
+
+	private static long mergeRound(long acc, long value) {
+		return (acc ^ round(0, value)) * PRIME1 + PRIME4;
+	}
+
+	private static long getLong(byte[] b, int off) {
+		return (getInt(b, off) & 0xFFFFFFFFL) | ((long) getInt(b, off + 4) << 32);
+	}
+
+	private static int getInt(byte[] b, int off) {
+		return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+	}
+}
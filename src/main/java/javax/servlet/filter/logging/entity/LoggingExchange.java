@@ -0,0 +1,51 @@
+package javax.servlet.filter.logging.entity;
+
+import java.io.Serializable;
+
+import static java.util.Objects.requireNonNull;
+
+public final class LoggingExchange implements Serializable {
+
+	private static final long serialVersionUID = 4518276015383528841L;
+
+	private final String id;
+
+	private final long durationMillis;
+
+	private final LoggingRequest request;
+
+	private final LoggingResponse response;
+
+	public LoggingExchange(LoggingRequest request, LoggingResponse response) {
+		this(null, -1, request, response);
+	}
+
+	public LoggingExchange(String id, long durationMillis, LoggingRequest request, LoggingResponse response) {
+		this.id = id;
+		this.durationMillis = durationMillis;
+		this.request = requireNonNull(request, "request must not be null");
+		this.response = requireNonNull(response, "response must not be null");
+	}
+
+	/**
+	 * Returns the correlation id of a combined exchange record or {@code null}.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the exchange duration in milliseconds or -1 when it is unknown.
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public LoggingRequest getRequest() {
+		return request;
+	}
+
+	public LoggingResponse getResponse() {
+		return response;
+	}
+}
@@ -1,11 +1,12 @@
 package javax.servlet.filter.logging.entity;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Map;
 
 public class LoggingRequest implements Serializable {
 
-	private static final long serialVersionUID = -4702574169916528738L;
+	private static final long serialVersionUID = 2617359403184726415L;
 
 	private String sender;
 
@@ -15,10 +16,14 @@ public class LoggingRequest implements Serializable {
 
 	private Map<String, String> params;
 
-	private Map<String, String> headers;
+	private Map<String, List<String>> headers;
 
 	private String body;
 
+	private String bodyHash;
+
+	private Long bodySize;
+
 	public String getSender() {
 		return sender;
 	}
@@ -51,11 +56,11 @@ public class LoggingRequest implements Serializable {
 		this.params = params;
 	}
 
-	public Map<String, String> getHeaders() {
+	public Map<String, List<String>> getHeaders() {
 		return headers;
 	}
 
-	public void setHeaders(Map<String, String> headers) {
+	public void setHeaders(Map<String, List<String>> headers) {
 		this.headers = headers;
 	}
 
@@ -66,4 +71,20 @@ public class LoggingRequest implements Serializable {
 	public void setBody(String body) {
 		this.body = body;
 	}
+
+	public String getBodyHash() {
+		return bodyHash;
+	}
+
+	public void setBodyHash(String bodyHash) {
+		this.bodyHash = bodyHash;
+	}
+
+	public Long getBodySize() {
+		return bodySize;
+	}
+
+	public void setBodySize(Long bodySize) {
+		this.bodySize = bodySize;
+	}
 }
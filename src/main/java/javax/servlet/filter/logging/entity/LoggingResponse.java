@@ -1,18 +1,23 @@
 package javax.servlet.filter.logging.entity;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Map;
 
 public class LoggingResponse implements Serializable {
 
-	private static final long serialVersionUID = -6692682176015358216L;
+	private static final long serialVersionUID = -3158862294070411653L;
 
 	private int status;
 
-	private Map<String, String> headers;
+	private Map<String, List<String>> headers;
 
 	private String body;
 
+	private String bodyHash;
+
+	private Long bodySize;
+
 	public int getStatus() {
 		return status;
 	}
@@ -21,11 +26,11 @@ public class LoggingResponse implements Serializable {
 		this.status = status;
 	}
 
-	public Map<String, String> getHeaders() {
+	public Map<String, List<String>> getHeaders() {
 		return headers;
 	}
 
-	public void setHeaders(Map<String, String> headers) {
+	public void setHeaders(Map<String, List<String>> headers) {
 		this.headers = headers;
 	}
 
@@ -36,4 +41,20 @@ public class LoggingResponse implements Serializable {
 	public void setBody(String body) {
 		this.body = body;
 	}
+
+	public String getBodyHash() {
+		return bodyHash;
+	}
+
+	public void setBodyHash(String bodyHash) {
+		this.bodyHash = bodyHash;
+	}
+
+	public Long getBodySize() {
+		return bodySize;
+	}
+
+	public void setBodySize(Long bodySize) {
+		this.bodySize = bodySize;
+	}
 }
@@ -0,0 +1,42 @@
+package javax.servlet.filter.logging.governor;
+
+/**
+ * How much of an exchange is captured, from the most to the least detailed.
+ */
+public enum CaptureLevel {
+
+	/**
+	 * Headers, parameters and bodies up to the content size limit.
+	 */
+	FULL,
+
+	/**
+	 * Headers and parameters, bodies are neither captured nor logged.
+	 */
+	HEADERS,
+
+	/**
+	 * One summary line per exchange, requests and responses are not wrapped.
+	 */
+	SUMMARY,
+
+	/**
+	 * Nothing is logged.
+	 */
+	OFF;
+
+	public CaptureLevel lower() {
+		return this == OFF ? OFF : values()[ordinal() + 1];
+	}
+
+	public CaptureLevel higher() {
+		return this == FULL ? FULL : values()[ordinal() - 1];
+	}
+
+	/**
+	 * Returns the less detailed of both levels.
+	 */
+	public CaptureLevel atMost(CaptureLevel level) {
+		return compareTo(level) >= 0 ? this : level;
+	}
+}
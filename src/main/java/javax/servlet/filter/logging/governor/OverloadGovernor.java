@@ -0,0 +1,108 @@
+package javax.servlet.filter.logging.governor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Lowers the capture level one step at a time while the filter's own mean overhead, the async queue fill ratio or the
+ * heap usage ratio is above its threshold, and raises it again one step at a time once all of them stayed below three
+ * quarters of their thresholds for a few evaluation intervals. A threshold of zero or less disables that signal.
+ * <p>
+ * The level is read on every request but only re-evaluated once per interval by whichever thread wins the race, so the
+ * governor costs a clock read and a volatile read per request.
+ */
+public final class OverloadGovernor {
+
+	private static final long EVALUATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private static final int RECOVERY_INTERVALS = 5;
+
+	private static final double RECOVERY_RATIO = 0.75;
+
+	private final long overheadThresholdNanos;
+
+	private final double queueThreshold;
+
+	private final double heapThreshold;
+
+	private final DoubleSupplier queueUtilization;
+
+	private final DoubleSupplier heapUtilization;
+
+	private final long intervalNanos;
+
+	private final int recoveryIntervals;
+
+	private final LongAdder overheadNanos = new LongAdder();
+
+	private final LongAdder overheadCount = new LongAdder();
+
+	private final AtomicLong nextEvaluationNanos;
+
+	private volatile CaptureLevel level = CaptureLevel.FULL;
+
+	private int calmIntervals;
+
+	public OverloadGovernor(long overheadThresholdNanos, double queueThreshold, double heapThreshold, DoubleSupplier queueUtilization) {
+		this(overheadThresholdNanos, queueThreshold, heapThreshold, queueUtilization, OverloadGovernor::getHeapUtilization,
+				EVALUATION_INTERVAL_NANOS, RECOVERY_INTERVALS);
+	}
+
+	OverloadGovernor(long overheadThresholdNanos, double queueThreshold, double heapThreshold, DoubleSupplier queueUtilization,
+			DoubleSupplier heapUtilization, long intervalNanos, int recoveryIntervals) {
+		this.overheadThresholdNanos = overheadThresholdNanos;
+		this.queueThreshold = queueThreshold;
+		this.heapThreshold = heapThreshold;
+		this.queueUtilization = queueUtilization;
+		this.heapUtilization = heapUtilization;
+		this.intervalNanos = intervalNanos;
+		this.recoveryIntervals = recoveryIntervals;
+		this.nextEvaluationNanos = new AtomicLong(System.nanoTime() + intervalNanos);
+	}
+
+	public void recordOverhead(long nanos) {
+		overheadNanos.add(nanos);
+		overheadCount.increment();
+	}
+
+	public CaptureLevel getLevel() {
+		long now = System.nanoTime();
+		long next = nextEvaluationNanos.get();
+		if (now - next >= 0 && nextEvaluationNanos.compareAndSet(next, now + intervalNanos)) {
+			evaluate();
+		}
+		return level;
+	}
+
+	private void evaluate() {
+		long count = overheadCount.sumThenReset();
+		long total = overheadNanos.sumThenReset();
+		double overhead = count > 0 ? (double) total / count : 0;
+		double queue = queueUtilization.getAsDouble();
+		double heap = heapThreshold > 0 ? heapUtilization.getAsDouble() : 0;
+		if (exceeds(overhead, overheadThresholdNanos, 1) || exceeds(queue, queueThreshold, 1) || exceeds(heap, heapThreshold, 1)) {
+			calmIntervals = 0;
+			level = level.lower();
+		} else if (exceeds(overhead, overheadThresholdNanos, RECOVERY_RATIO) || exceeds(queue, queueThreshold, RECOVERY_RATIO)
+				|| exceeds(heap, heapThreshold, RECOVERY_RATIO)) {
+			calmIntervals = 0;
+		} else if (level != CaptureLevel.FULL && ++calmIntervals >= recoveryIntervals) {
+			calmIntervals = 0;
+			level = level.higher();
+		}
+	}
+
+	private static boolean exceeds(double value, double threshold, double ratio) {
+		return threshold > 0 && value > threshold * ratio;
+	}
+
+	private static double getHeapUtilization() {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+		return max > 0 ? (double) heap.getUsed() / max : 0;
+	}
+}
@@ -0,0 +1,517 @@
+package javax.servlet.filter.logging.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.apache.commons.io.output.StringBuilderWriter;
+
+import javax.servlet.filter.logging.aggregation.ExchangeAggregate;
+import javax.servlet.filter.logging.entity.LoggingExchange;
+import javax.servlet.filter.logging.entity.LoggingRequest;
+import javax.servlet.filter.logging.entity.LoggingResponse;
+import javax.servlet.filter.logging.matcher.HeaderMatcher;
+import javax.servlet.filter.logging.redaction.RedactionRules;
+import javax.servlet.filter.logging.wrapper.LoggingHttpServletRequestWrapper;
+import javax.servlet.filter.logging.wrapper.LoggingHttpServletResponseWrapper;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes requests and responses as JSON straight into a per-thread buffer. The output has the same shape as
+ * {@link LoggingRequest} and {@link LoggingResponse} serialized with empty values omitted. A header with one value is
+ * written as a string and a repeated header as an array. Headers are read from the wrappers one by one, selected by the
+ * given {@link HeaderMatcher} and masked by the given {@link RedactionRules} while they are written, entities are
+ * expected to be selected and masked already.
+ */
+public final class ExchangeJsonEncoder {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private static final SerializableString SENDER = new SerializedString("sender");
+	private static final SerializableString METHOD = new SerializedString("method");
+	private static final SerializableString PATH = new SerializedString("path");
+	private static final SerializableString PARAMS = new SerializedString("params");
+	private static final SerializableString HEADERS = new SerializedString("headers");
+	private static final SerializableString BODY = new SerializedString("body");
+	private static final SerializableString BODY_HASH = new SerializedString("bodyHash");
+	private static final SerializableString BODY_SIZE = new SerializedString("bodySize");
+	private static final SerializableString STATUS = new SerializedString("status");
+	private static final SerializableString DURATION = new SerializedString("duration");
+	private static final SerializableString ID = new SerializedString("id");
+	private static final SerializableString PART = new SerializedString("part");
+	private static final SerializableString REQUEST = new SerializedString("request");
+	private static final SerializableString RESPONSE = new SerializedString("response");
+	private static final SerializableString ROUTE = new SerializedString("route");
+	private static final SerializableString COUNT = new SerializedString("count");
+	private static final SerializableString ERRORS = new SerializedString("errors");
+	private static final SerializableString MIN_DURATION = new SerializedString("minDuration");
+	private static final SerializableString AVG_DURATION = new SerializedString("avgDuration");
+	private static final SerializableString MAX_DURATION = new SerializedString("maxDuration");
+	private static final SerializableString REQUEST_BYTES = new SerializedString("requestBytes");
+	private static final SerializableString RESPONSE_BYTES = new SerializedString("responseBytes");
+
+	private static final String EMPTY_VALUE = "[EMPTY]";
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<StringBuilderWriter> BUFFER = ThreadLocal.withInitial(() -> new StringBuilderWriter(INITIAL_BUFFER_SIZE));
+
+	private final RedactionRules redactionRules;
+
+	private final HeaderMatcher headerMatcher;
+
+	public ExchangeJsonEncoder() {
+		this(RedactionRules.none(), HeaderMatcher.all());
+	}
+
+	public ExchangeJsonEncoder(RedactionRules redactionRules, HeaderMatcher headerMatcher) {
+		this.redactionRules = requireNonNull(redactionRules, "redactionRules must not be null");
+		this.headerMatcher = requireNonNull(headerMatcher, "headerMatcher must not be null");
+	}
+
+	public String encodeRequest(String prefix, LoggingHttpServletRequestWrapper requestWrapper, String body) throws IOException {
+		return encodeRequest(prefix, null, requestWrapper, body);
+	}
+
+	/**
+	 * Writes a request record carrying the given correlation id, if any, so that the parts of its spilled body can be
+	 * matched with it.
+	 */
+	public String encodeRequest(String prefix, String id, LoggingHttpServletRequestWrapper requestWrapper, String body) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			writeRequest(generator, id, requestWrapper, body);
+		}
+		return releaseBuffer(writer);
+	}
+
+	public String encodeResponse(String prefix, LoggingHttpServletResponseWrapper responseWrapper, String body) throws IOException {
+		return encodeResponse(prefix, null, responseWrapper, body);
+	}
+
+	public String encodeResponse(String prefix, String id, LoggingHttpServletResponseWrapper responseWrapper, String body) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			writeResponse(generator, id, responseWrapper, body);
+		}
+		return releaseBuffer(writer);
+	}
+
+	public String encode(String prefix, LoggingRequest loggingRequest) throws IOException {
+		return encode(prefix, null, loggingRequest);
+	}
+
+	public String encode(String prefix, String id, LoggingRequest loggingRequest) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			writeRequest(generator, id, loggingRequest);
+		}
+		return releaseBuffer(writer);
+	}
+
+	public String encode(String prefix, LoggingResponse loggingResponse) throws IOException {
+		return encode(prefix, null, loggingResponse);
+	}
+
+	public String encode(String prefix, String id, LoggingResponse loggingResponse) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			writeResponse(generator, id, loggingResponse);
+		}
+		return releaseBuffer(writer);
+	}
+
+	/**
+	 * Writes a request and its response as one exchange record.
+	 */
+	public String encodeExchange(String prefix, String id, long durationMillis, LoggingHttpServletRequestWrapper requestWrapper, String requestBody,
+			LoggingHttpServletResponseWrapper responseWrapper, String responseBody) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			startExchange(generator, id, durationMillis);
+			generator.writeFieldName(REQUEST);
+			writeRequest(generator, null, requestWrapper, requestBody);
+			generator.writeFieldName(RESPONSE);
+			writeResponse(generator, null, responseWrapper, responseBody);
+			generator.writeEndObject();
+		}
+		return releaseBuffer(writer);
+	}
+
+	public String encode(String prefix, LoggingExchange loggingExchange) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			startExchange(generator, loggingExchange.getId(), loggingExchange.getDurationMillis());
+			generator.writeFieldName(REQUEST);
+			writeRequest(generator, null, loggingExchange.getRequest());
+			generator.writeFieldName(RESPONSE);
+			writeResponse(generator, null, loggingExchange.getResponse());
+			generator.writeEndObject();
+		}
+		return releaseBuffer(writer);
+	}
+
+	/**
+	 * Writes an exchange record from customized request and response descriptions. A description holding exactly one
+	 * well-formed JSON object or array is embedded as it is, anything else, including text that merely looks like JSON,
+	 * is written as a string so the record stays valid JSON.
+	 */
+	public String encodeExchange(String prefix, String id, long durationMillis, String requestDescription, String responseDescription)
+			throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			startExchange(generator, id, durationMillis);
+			writeDescription(generator, REQUEST, requestDescription);
+			writeDescription(generator, RESPONSE, responseDescription);
+			generator.writeEndObject();
+		}
+		return releaseBuffer(writer);
+	}
+
+	/**
+	 * Writes one part of a body too large to be logged in a single record. Parts are numbered from one.
+	 */
+	public String encodeBodyPart(String prefix, String id, int part, String body) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			generator.writeStartObject();
+			writeField(generator, ID, id);
+			writeNumber(generator, PART, part);
+			generator.writeFieldName(BODY);
+			generator.writeString(body);
+			generator.writeEndObject();
+		}
+		return releaseBuffer(writer);
+	}
+
+	public String encodeSummary(String prefix, String method, String path, int status, long durationMillis) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			generator.writeStartObject();
+			writeField(generator, METHOD, method);
+			writeField(generator, PATH, path);
+			generator.writeFieldName(STATUS);
+			generator.writeNumber(status);
+			generator.writeFieldName(DURATION);
+			generator.writeNumber(durationMillis);
+			generator.writeEndObject();
+		}
+		return releaseBuffer(writer);
+	}
+
+	/**
+	 * Writes an aggregate with its durations in milliseconds to microsecond precision.
+	 */
+	public String encodeAggregate(String prefix, ExchangeAggregate aggregate) throws IOException {
+		StringBuilderWriter writer = acquireBuffer(prefix);
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+			generator.writeStartObject();
+			writeField(generator, METHOD, aggregate.getMethod());
+			writeField(generator, ROUTE, aggregate.getRoute());
+			writeNumber(generator, STATUS, aggregate.getStatus());
+			writeNumber(generator, COUNT, aggregate.getCount());
+			writeNumber(generator, ERRORS, aggregate.getErrors());
+			writeMillis(generator, MIN_DURATION, aggregate.getMinDurationNanos());
+			writeMillis(generator, AVG_DURATION, aggregate.getMeanDurationNanos());
+			writeMillis(generator, MAX_DURATION, aggregate.getMaxDurationNanos());
+			writeNumber(generator, REQUEST_BYTES, aggregate.getRequestBytes());
+			writeNumber(generator, RESPONSE_BYTES, aggregate.getResponseBytes());
+			generator.writeEndObject();
+		}
+		return releaseBuffer(writer);
+	}
+
+	private static void writeNumber(JsonGenerator generator, SerializableString name, long value) throws IOException {
+		generator.writeFieldName(name);
+		generator.writeNumber(value);
+	}
+
+	private static void writeMillis(JsonGenerator generator, SerializableString name, long nanos) throws IOException {
+		generator.writeFieldName(name);
+		generator.writeNumber(BigDecimal.valueOf(TimeUnit.NANOSECONDS.toMicros(nanos), 3));
+	}
+
+	private static StringBuilderWriter acquireBuffer(String prefix) {
+		StringBuilderWriter writer = BUFFER.get();
+		writer.getBuilder().setLength(0);
+		if (prefix != null) {
+			writer.write(prefix);
+		}
+		return writer;
+	}
+
+	private static String releaseBuffer(StringBuilderWriter writer) {
+		StringBuilder builder = writer.getBuilder();
+		String result = builder.toString();
+		if (builder.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+			BUFFER.remove();
+		}
+		return result;
+	}
+
+	private static void writeField(JsonGenerator generator, SerializableString name, String value) throws IOException {
+		if (value != null && !value.isEmpty()) {
+			generator.writeFieldName(name);
+			generator.writeString(value);
+		}
+	}
+
+	private void writeRequest(JsonGenerator generator, String id, LoggingHttpServletRequestWrapper requestWrapper, String body) throws IOException {
+		generator.writeStartObject();
+		writeField(generator, ID, id);
+		writeField(generator, SENDER, requestWrapper.getLocalAddr());
+		writeField(generator, METHOD, requestWrapper.getMethod());
+		writeField(generator, PATH, requestWrapper.getRequestURI());
+		if (!requestWrapper.isFormPost()) {
+			writeParameters(generator, requestWrapper.getParameterMap());
+		}
+		writeHeaders(generator, requestWrapper.getHeaderNames(), requestWrapper);
+		writeField(generator, BODY, body);
+		String bodyHash = requestWrapper.getBodyHash();
+		if (bodyHash != null) {
+			writeDigest(generator, bodyHash, requestWrapper.getBodySize());
+		}
+		generator.writeEndObject();
+	}
+
+	private void writeResponse(JsonGenerator generator, String id, LoggingHttpServletResponseWrapper responseWrapper, String body) throws IOException {
+		generator.writeStartObject();
+		writeField(generator, ID, id);
+		generator.writeFieldName(STATUS);
+		generator.writeNumber(responseWrapper.getStatus());
+		boolean started = false;
+		for (String headerName : responseWrapper.getHeaderNames()) {
+			if (headerMatcher.matches(headerName)) {
+				started = writeHeader(generator, started, headerName, responseWrapper.getHeaders(headerName));
+			}
+		}
+		if (started) {
+			generator.writeEndObject();
+		}
+		writeField(generator, BODY, body);
+		String bodyHash = responseWrapper.getBodyHash();
+		if (bodyHash != null) {
+			writeDigest(generator, bodyHash, responseWrapper.getBodySize());
+		}
+		generator.writeEndObject();
+	}
+
+	private static void writeRequest(JsonGenerator generator, String id, LoggingRequest loggingRequest) throws IOException {
+		generator.writeStartObject();
+		writeField(generator, ID, id);
+		writeField(generator, SENDER, loggingRequest.getSender());
+		writeField(generator, METHOD, loggingRequest.getMethod());
+		writeField(generator, PATH, loggingRequest.getPath());
+		writeMap(generator, PARAMS, loggingRequest.getParams());
+		writeHeaders(generator, loggingRequest.getHeaders());
+		writeField(generator, BODY, loggingRequest.getBody());
+		writeDigest(generator, loggingRequest.getBodyHash(), loggingRequest.getBodySize());
+		generator.writeEndObject();
+	}
+
+	private static void writeResponse(JsonGenerator generator, String id, LoggingResponse loggingResponse) throws IOException {
+		generator.writeStartObject();
+		writeField(generator, ID, id);
+		generator.writeFieldName(STATUS);
+		generator.writeNumber(loggingResponse.getStatus());
+		writeHeaders(generator, loggingResponse.getHeaders());
+		writeField(generator, BODY, loggingResponse.getBody());
+		writeDigest(generator, loggingResponse.getBodyHash(), loggingResponse.getBodySize());
+		generator.writeEndObject();
+	}
+
+	private static void writeDigest(JsonGenerator generator, String bodyHash, Long bodySize) throws IOException {
+		writeField(generator, BODY_HASH, bodyHash);
+		if (bodySize != null) {
+			writeNumber(generator, BODY_SIZE, bodySize);
+		}
+	}
+
+	private static void startExchange(JsonGenerator generator, String id, long durationMillis) throws IOException {
+		generator.writeStartObject();
+		writeField(generator, ID, id);
+		if (durationMillis >= 0) {
+			writeNumber(generator, DURATION, durationMillis);
+		}
+	}
+
+	private static void writeDescription(JsonGenerator generator, SerializableString name, String description) throws IOException {
+		generator.writeFieldName(name);
+		if (description == null) {
+			generator.writeNull();
+		} else if (isJsonContainer(description)) {
+			generator.writeRawValue(description);
+		} else {
+			generator.writeString(description);
+		}
+	}
+
+	private static boolean isJsonContainer(String text) {
+		if (!isBracketed(text)) {
+			return false;
+		}
+		try (JsonParser parser = JSON_FACTORY.createParser(text)) {
+			JsonToken token = parser.nextToken();
+			if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+				return false;
+			}
+			parser.skipChildren();
+			return parser.nextToken() == null;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static boolean isBracketed(String text) {
+		int start = 0;
+		int end = text.length() - 1;
+		while (start <= end && Character.isWhitespace(text.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(text.charAt(end))) {
+			end--;
+		}
+		if (start >= end) {
+			return false;
+		}
+		char first = text.charAt(start);
+		char last = text.charAt(end);
+		return (first == '{' && last == '}') || (first == '[' && last == ']');
+	}
+
+	private void writeParameters(JsonGenerator generator, Map<String, String[]> parameters) throws IOException {
+		if (parameters == null || parameters.isEmpty()) {
+			return;
+		}
+		generator.writeFieldName(PARAMS);
+		generator.writeStartObject();
+		for (Entry<String, String[]> parameter : parameters.entrySet()) {
+			String[] values = parameter.getValue();
+			String value = values != null && values.length > 0 ? values[0] : EMPTY_VALUE;
+			generator.writeStringField(parameter.getKey(), redactionRules.redactParam(parameter.getKey(), value));
+		}
+		generator.writeEndObject();
+	}
+
+	private void writeHeaders(JsonGenerator generator, Enumeration<String> headerNames, LoggingHttpServletRequestWrapper requestWrapper) throws IOException {
+		boolean started = false;
+		while (headerNames != null && headerNames.hasMoreElements()) {
+			String headerName = headerNames.nextElement();
+			if (headerMatcher.matches(headerName)) {
+				started = writeHeader(generator, started, headerName, requestWrapper.getHeaders(headerName));
+			}
+		}
+		if (started) {
+			generator.writeEndObject();
+		}
+	}
+
+	private boolean writeHeader(JsonGenerator generator, boolean started, String name, Enumeration<String> values) throws IOException {
+		startHeaders(generator, started, name);
+		if (values == null || !values.hasMoreElements()) {
+			generator.writeNull();
+		} else if (redactionRules.isRedactedHeader(name)) {
+			generator.writeString(RedactionRules.MASK);
+		} else {
+			String first = values.nextElement();
+			if (!values.hasMoreElements()) {
+				writeValue(generator, first);
+			} else {
+				generator.writeStartArray();
+				writeValue(generator, first);
+				while (values.hasMoreElements()) {
+					writeValue(generator, values.nextElement());
+				}
+				generator.writeEndArray();
+			}
+		}
+		return true;
+	}
+
+	private boolean writeHeader(JsonGenerator generator, boolean started, String name, Collection<String> values) throws IOException {
+		startHeaders(generator, started, name);
+		if (values == null || values.isEmpty()) {
+			generator.writeNull();
+		} else if (redactionRules.isRedactedHeader(name)) {
+			generator.writeString(RedactionRules.MASK);
+		} else {
+			writeValues(generator, values);
+		}
+		return true;
+	}
+
+	private static void writeHeaders(JsonGenerator generator, Map<String, List<String>> headers) throws IOException {
+		if (headers == null || headers.isEmpty()) {
+			return;
+		}
+		generator.writeFieldName(HEADERS);
+		generator.writeStartObject();
+		for (Entry<String, List<String>> header : headers.entrySet()) {
+			generator.writeFieldName(header.getKey());
+			if (header.getValue() == null || header.getValue().isEmpty()) {
+				generator.writeNull();
+			} else {
+				writeValues(generator, header.getValue());
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	private static void startHeaders(JsonGenerator generator, boolean started, String name) throws IOException {
+		if (!started) {
+			generator.writeFieldName(HEADERS);
+			generator.writeStartObject();
+		}
+		generator.writeFieldName(name);
+	}
+
+	private static void writeValues(JsonGenerator generator, Collection<String> values) throws IOException {
+		if (values.size() == 1) {
+			writeValue(generator, values.iterator().next());
+			return;
+		}
+		generator.writeStartArray();
+		for (String value : values) {
+			writeValue(generator, value);
+		}
+		generator.writeEndArray();
+	}
+
+	private static void writeValue(JsonGenerator generator, String value) throws IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(value);
+		}
+	}
+
+	private static void writeMap(JsonGenerator generator, SerializableString name, Map<String, String> values) throws IOException {
+		if (values == null || values.isEmpty()) {
+			return;
+		}
+		generator.writeFieldName(name);
+		generator.writeStartObject();
+		for (Entry<String, String> entry : values.entrySet()) {
+			generator.writeFieldName(entry.getKey());
+			if (entry.getValue() == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(entry.getValue());
+			}
+		}
+		generator.writeEndObject();
+	}
+}
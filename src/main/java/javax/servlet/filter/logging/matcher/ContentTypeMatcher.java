@@ -0,0 +1,150 @@
+package javax.servlet.filter.logging.matcher;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Decides whether a body is captured as text from its media type. Included and excluded media types are compiled into
+ * hash sets, so a lookup costs a few hash probes whatever the number of patterns. Supported patterns:
+ * <ul>
+ * <li>{@code application/json} - exact media type, parameters such as {@code charset} are ignored</li>
+ * <li>{@code text/*} - any subtype of a type</li>
+ * <li>{@code application/*+json} or {@code *}{@code /*+json} - structured syntax suffix</li>
+ * <li>{@code *}{@code /*} - any media type</li>
+ * </ul>
+ * A body without a content type is always captured. Exclusions take precedence over inclusions and an empty inclusion
+ * list includes every media type. A body whose declared Content-Length exceeds the maximal captured length is not
+ * captured whatever its media type.
+ */
+public final class ContentTypeMatcher {
+
+	public static final List<String> TEXT_CONTENT_TYPES = unmodifiableList(Arrays.asList(
+			"text/*", "application/json", "application/*+json", "application/x-ndjson", "application/xml", "application/*+xml",
+			"application/x-www-form-urlencoded", "application/javascript", "application/graphql"));
+
+	private static final String ANY = "*";
+
+	private static final String SUFFIX_WILDCARD = "*+";
+
+	private static final ContentTypeMatcher TEXT = compile(TEXT_CONTENT_TYPES, emptySet(), -1);
+
+	private final Patterns included;
+
+	private final Patterns excluded;
+
+	private final long maxContentLength;
+
+	private ContentTypeMatcher(Patterns included, Patterns excluded, long maxContentLength) {
+		this.included = included;
+		this.excluded = excluded;
+		this.maxContentLength = maxContentLength;
+	}
+
+	public static ContentTypeMatcher text() {
+		return TEXT;
+	}
+
+	public static ContentTypeMatcher compile(Collection<String> included, Collection<String> excluded) {
+		return compile(included, excluded, -1);
+	}
+
+	/**
+	 * @param maxContentLength largest declared Content-Length in bytes of a captured body, negative for no limit
+	 */
+	public static ContentTypeMatcher compile(Collection<String> included, Collection<String> excluded, long maxContentLength) {
+		return new ContentTypeMatcher(new Patterns(included), new Patterns(excluded), maxContentLength);
+	}
+
+	/**
+	 * Returns whether a body of the content type and declared length is captured. A negative length is unknown and never
+	 * exceeds the limit.
+	 */
+	public boolean matches(String contentType, long contentLength) {
+		if (maxContentLength >= 0 && contentLength > maxContentLength) {
+			return false;
+		}
+		return matches(contentType);
+	}
+
+	public boolean matches(String contentType) {
+		if (contentType == null) {
+			return true;
+		}
+		String mediaType = normalize(contentType);
+		if (mediaType.isEmpty()) {
+			return true;
+		}
+		if (excluded.matches(mediaType)) {
+			return false;
+		}
+		return included.isEmpty() || included.matches(mediaType);
+	}
+
+	private static String normalize(String contentType) {
+		int end = contentType.indexOf(';');
+		String mediaType = (end < 0 ? contentType : contentType.substring(0, end)).trim();
+		return mediaType.toLowerCase(Locale.ROOT);
+	}
+
+	private static final class Patterns {
+
+		private final Set<String> mediaTypes = new HashSet<>();
+
+		private final Set<String> types = new HashSet<>();
+
+		private final Set<String> suffixes = new HashSet<>();
+
+		private boolean any;
+
+		private Patterns(Collection<String> patterns) {
+			for (String pattern : patterns) {
+				String mediaType = normalize(pattern);
+				if (mediaType.isEmpty()) {
+					continue;
+				}
+				int slash = mediaType.indexOf('/');
+				String type = slash < 0 ? mediaType : mediaType.substring(0, slash);
+				String subtype = slash < 0 ? ANY : mediaType.substring(slash + 1);
+				if (ANY.equals(type) && ANY.equals(subtype)) {
+					any = true;
+				} else if (ANY.equals(subtype)) {
+					types.add(type);
+				} else if (subtype.startsWith(SUFFIX_WILDCARD)) {
+					suffixes.add((ANY.equals(type) ? "" : type) + subtype.substring(1));
+				} else {
+					mediaTypes.add(mediaType);
+				}
+			}
+		}
+
+		private boolean isEmpty() {
+			return !any && mediaTypes.isEmpty() && types.isEmpty() && suffixes.isEmpty();
+		}
+
+		private boolean matches(String mediaType) {
+			if (any || mediaTypes.contains(mediaType)) {
+				return true;
+			}
+			int slash = mediaType.indexOf('/');
+			if (slash < 0) {
+				return false;
+			}
+			if (types.contains(mediaType.substring(0, slash))) {
+				return true;
+			}
+			int plus = mediaType.lastIndexOf('+');
+			if (plus > slash && !suffixes.isEmpty()) {
+				String suffix = mediaType.substring(plus);
+				return suffixes.contains(suffix) || suffixes.contains(mediaType.substring(0, slash) + suffix);
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package javax.servlet.filter.logging.matcher;
+
+import java.util.Collection;
+
+/**
+ * Selects logged headers by name, ignoring case. Excluded names take precedence over included names and an empty
+ * inclusion list includes every header.
+ */
+public final class HeaderMatcher {
+
+	private static final HeaderMatcher ALL = new HeaderMatcher(NameMatcher.empty(), NameMatcher.empty());
+
+	private final NameMatcher included;
+
+	private final NameMatcher excluded;
+
+	private HeaderMatcher(NameMatcher included, NameMatcher excluded) {
+		this.included = included;
+		this.excluded = excluded;
+	}
+
+	public static HeaderMatcher all() {
+		return ALL;
+	}
+
+	public static HeaderMatcher compile(Collection<String> included, Collection<String> excluded) {
+		if (included.isEmpty() && excluded.isEmpty()) {
+			return ALL;
+		}
+		return new HeaderMatcher(NameMatcher.compile(included), NameMatcher.compile(excluded));
+	}
+
+	public boolean matches(String name) {
+		if (name == null || excluded.matches(name)) {
+			return false;
+		}
+		return included.isEmpty() || included.matches(name);
+	}
+}
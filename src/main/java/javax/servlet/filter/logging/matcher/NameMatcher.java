@@ -0,0 +1,123 @@
+package javax.servlet.filter.logging.matcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Case-insensitive set of names such as header or parameter names compiled into an open addressing hash table. A
+ * lookup hashes the name with case folded on the fly and compares in place, so it never allocates and also works on a
+ * region of a larger character sequence.
+ */
+public final class NameMatcher {
+
+	private static final NameMatcher EMPTY = new NameMatcher(new ArrayList<>());
+
+	private final String[] names;
+
+	private final String[] table;
+
+	private final int[] indexes;
+
+	private final int mask;
+
+	private NameMatcher(List<String> names) {
+		this.names = names.toArray(new String[0]);
+		int capacity = Integer.highestOneBit(Math.max(names.size(), 1) * 2 + 1) << 1;
+		this.table = new String[capacity];
+		this.indexes = new int[capacity];
+		this.mask = capacity - 1;
+		for (int i = 0; i < this.names.length; i++) {
+			String name = this.names[i];
+			int slot = hash(name, 0, name.length()) & mask;
+			while (table[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = name;
+			indexes[slot] = i;
+		}
+	}
+
+	public static NameMatcher empty() {
+		return EMPTY;
+	}
+
+	public static NameMatcher compile(Collection<String> names) {
+		List<String> distinct = new ArrayList<>(names.size());
+		for (String name : names) {
+			String trimmed = name.trim();
+			if (!trimmed.isEmpty() && !contains(distinct, trimmed)) {
+				distinct.add(trimmed);
+			}
+		}
+		return distinct.isEmpty() ? EMPTY : new NameMatcher(distinct);
+	}
+
+	public boolean isEmpty() {
+		return names.length == 0;
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	public boolean matches(CharSequence name) {
+		return name != null && indexOf(name, 0, name.length()) >= 0;
+	}
+
+	public int indexOf(CharSequence name) {
+		return name == null ? -1 : indexOf(name, 0, name.length());
+	}
+
+	/**
+	 * Returns the index of the name equal to the given region ignoring case or -1.
+	 */
+	public int indexOf(CharSequence text, int start, int end) {
+		if (names.length == 0) {
+			return -1;
+		}
+		int slot = hash(text, start, end) & mask;
+		for (String candidate = table[slot]; candidate != null; candidate = table[slot]) {
+			if (regionEquals(candidate, text, start, end)) {
+				return indexes[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private static int hash(CharSequence text, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean regionEquals(String candidate, CharSequence text, int start, int end) {
+		if (candidate.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < candidate.length(); i++) {
+			char a = candidate.charAt(i);
+			char b = text.charAt(start + i);
+			if (a != b && Character.toLowerCase(Character.toUpperCase(a)) != Character.toLowerCase(Character.toUpperCase(b))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean contains(List<String> names, String name) {
+		for (String existing : names) {
+			if (regionEquals(existing, name, 0, name.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
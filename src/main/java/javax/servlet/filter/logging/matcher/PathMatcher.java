@@ -0,0 +1,273 @@
+package javax.servlet.filter.logging.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Matches request paths against a set of patterns compiled into a character trie. A lookup reads the path once, so it
+ * costs O(path length) whatever the number of patterns, times the number of {@code *} branches alive at the same
+ * position when patterns contain wildcards. Supported patterns:
+ * <ul>
+ * <li>{@code /api} - plain prefix, matches {@code /api}, {@code /api/users} and {@code /apiary}</li>
+ * <li>{@code /api/*} - servlet path prefix, matches {@code /api} and everything below {@code /api/}</li>
+ * <li>{@code *.css} - servlet extension mapping</li>
+ * <li>{@code /api/*}{@code /health} - {@code *} inside a pattern matches one path segment or a part of it</li>
+ * </ul>
+ * When several patterns match, the longest literal match wins and extension patterns are used last.
+ */
+public final class PathMatcher<T> {
+
+	private static final PathMatcher<?> EMPTY = new PathMatcher<>(new Node<>(), new Node<>(), false, true);
+
+	private static final char WILDCARD = '*';
+
+	private static final char SEPARATOR = '/';
+
+	private static final String PATH_PREFIX_SUFFIX = "/*";
+
+	private static final String EXTENSION_PREFIX = "*.";
+
+	private final Node<T> paths;
+
+	private final Node<T> extensions;
+
+	private final boolean wildcards;
+
+	private final boolean empty;
+
+	private PathMatcher(Node<T> paths, Node<T> extensions, boolean wildcards, boolean empty) {
+		this.paths = paths;
+		this.extensions = extensions;
+		this.wildcards = wildcards;
+		this.empty = empty;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> PathMatcher<T> empty() {
+		return (PathMatcher<T>) EMPTY;
+	}
+
+	public static PathMatcher<String> compile(Collection<String> patterns) {
+		requireNonNull(patterns, "patterns must not be null");
+		Map<String, String> values = new LinkedHashMap<>();
+		for (String pattern : patterns) {
+			values.put(pattern, pattern);
+		}
+		return compile(values);
+	}
+
+	public static <T> PathMatcher<T> compile(Map<String, T> patterns) {
+		requireNonNull(patterns, "patterns must not be null");
+		if (patterns.isEmpty()) {
+			return empty();
+		}
+		Node<T> paths = new Node<>();
+		Node<T> extensions = new Node<>();
+		boolean wildcards = false;
+		for (Entry<String, T> pattern : patterns.entrySet()) {
+			String value = requireNonNull(pattern.getKey(), "pattern must not be null").trim();
+			requireNonNull(pattern.getValue(), "pattern value must not be null");
+			if (value.isEmpty()) {
+				throw new IllegalArgumentException("pattern must not be empty");
+			}
+			if (value.startsWith(EXTENSION_PREFIX) && value.indexOf(SEPARATOR) < 0 && value.indexOf(WILDCARD, 1) < 0) {
+				addExtension(extensions, value.substring(1), pattern.getValue());
+			} else if (value.indexOf(WILDCARD) < 0) {
+				addPath(paths, value, 0, value.length()).prefixValue = pattern.getValue();
+			} else if (value.endsWith(PATH_PREFIX_SUFFIX) && value.indexOf(WILDCARD) == value.length() - 1) {
+				addPath(paths, value, 0, value.length() - PATH_PREFIX_SUFFIX.length()).segmentValue = pattern.getValue();
+			} else {
+				addPath(paths, value, 0, value.length()).segmentValue = pattern.getValue();
+				wildcards = true;
+			}
+		}
+		return new PathMatcher<>(paths, extensions, wildcards, false);
+	}
+
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	public boolean matches(String path) {
+		return match(path) != null;
+	}
+
+	public T match(String path) {
+		if (empty || path == null) {
+			return null;
+		}
+		T value = wildcards ? matchWildcards(paths, path) : match(paths, path);
+		return value != null ? value : matchExtension(path);
+	}
+
+	private T match(Node<T> root, String path) {
+		T best = null;
+		Node<T> node = root;
+		int index = 0;
+		while (node != null) {
+			if (node.prefixValue != null) {
+				best = node.prefixValue;
+			}
+			if (node.segmentValue != null && isSegmentEnd(path, index)) {
+				best = node.segmentValue;
+			}
+			if (index == path.length()) {
+				break;
+			}
+			node = node.child(path.charAt(index++));
+		}
+		return best;
+	}
+
+	/**
+	 * Walks all trie branches the path can follow at once, one character at a time, instead of backtracking over the
+	 * characters a {@code *} may cover. The value accepted furthest into the path wins, then the one with the most
+	 * literal characters.
+	 */
+	private T matchWildcards(Node<T> root, String path) {
+		T best = null;
+		int bestIndex = -1;
+		int bestLiteralLength = -1;
+		List<Node<T>> active = new ArrayList<>();
+		List<Node<T>> next = new ArrayList<>();
+		addActive(active, root);
+		for (int index = 0; !active.isEmpty(); index++) {
+			boolean segmentEnd = isSegmentEnd(path, index);
+			for (Node<T> node : active) {
+				T value = node.prefixValue;
+				if (node.segmentValue != null && segmentEnd) {
+					value = node.segmentValue;
+				}
+				if (value != null && (index > bestIndex || node.literalLength >= bestLiteralLength)) {
+					best = value;
+					bestIndex = index;
+					bestLiteralLength = node.literalLength;
+				}
+			}
+			if (index == path.length()) {
+				break;
+			}
+			char c = path.charAt(index);
+			next.clear();
+			for (Node<T> node : active) {
+				Node<T> child = node.child(c);
+				if (child != null) {
+					addActive(next, child);
+				}
+				if (node.isWildcard && c != SEPARATOR) {
+					addActive(next, node);
+				}
+			}
+			List<Node<T>> swap = active;
+			active = next;
+			next = swap;
+		}
+		return best;
+	}
+
+	/**
+	 * Adds the node and the wildcards following it, since a {@code *} may also match nothing.
+	 */
+	private static <T> void addActive(List<Node<T>> active, Node<T> node) {
+		for (Node<T> current = node; current != null && !active.contains(current); current = current.wildcard) {
+			active.add(current);
+		}
+	}
+
+	private static boolean isSegmentEnd(String path, int index) {
+		return index == path.length() || path.charAt(index) == SEPARATOR;
+	}
+
+	private T matchExtension(String path) {
+		Node<T> node = extensions;
+		for (int index = path.length() - 1; index >= 0 && node != null; index--) {
+			char c = path.charAt(index);
+			if (c == SEPARATOR) {
+				return null;
+			}
+			node = node.child(c);
+			if (node != null && node.prefixValue != null && c == '.') {
+				return node.prefixValue;
+			}
+		}
+		return null;
+	}
+
+	private static <T> Node<T> addPath(Node<T> root, String pattern, int from, int to) {
+		Node<T> node = root;
+		for (int i = from; i < to; i++) {
+			char c = pattern.charAt(i);
+			if (c == WILDCARD) {
+				if (node.wildcard == null) {
+					node.wildcard = new Node<>();
+					node.wildcard.isWildcard = true;
+					node.wildcard.literalLength = node.literalLength;
+				}
+				node = node.wildcard;
+			} else {
+				node = node.getOrAddChild(c);
+			}
+		}
+		return node;
+	}
+
+	private static <T> void addExtension(Node<T> root, String extension, T value) {
+		Node<T> node = root;
+		for (int i = extension.length() - 1; i >= 0; i--) {
+			node = node.getOrAddChild(extension.charAt(i));
+		}
+		node.prefixValue = value;
+	}
+
+	private static final class Node<T> {
+
+		private char[] labels = new char[0];
+
+		private Node<T>[] children = newArray(0);
+
+		private Node<T> wildcard;
+
+		private boolean isWildcard;
+
+		private int literalLength;
+
+		private T prefixValue;
+
+		private T segmentValue;
+
+		private Node<T> child(char label) {
+			char[] currentLabels = labels;
+			for (int i = 0; i < currentLabels.length; i++) {
+				if (currentLabels[i] == label) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node<T> getOrAddChild(char label) {
+			Node<T> child = child(label);
+			if (child == null) {
+				child = new Node<>();
+				child.literalLength = literalLength + 1;
+				labels = Arrays.copyOf(labels, labels.length + 1);
+				labels[labels.length - 1] = label;
+				children = Arrays.copyOf(children, children.length + 1);
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static <T> Node<T>[] newArray(int size) {
+			return (Node<T>[]) new Node<?>[size];
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package javax.servlet.filter.logging.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request duration and body sizes per route template and status class together with the time spent in the filter
+ * itself. Published as an MXBean under {@value #DOMAIN}.
+ */
+public class FilterMetrics implements FilterMetricsMXBean {
+
+	public static final String DOMAIN = "javax.servlet.filter.logging";
+
+	private static final int MAX_ROUTES = 1000;
+
+	private static final String OTHER_ROUTE = "[OTHER]";
+
+	private static final String[] STATUS_CLASSES = {"0xx", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+	private final ConcurrentMap<String, AtomicReferenceArray<RouteMetrics>> routes = new ConcurrentHashMap<>();
+
+	private final Histogram overhead = new Histogram();
+
+	private ObjectName objectName;
+
+	public void record(String route, int status, long durationNanos, long requestBytes, long responseBytes) {
+		AtomicReferenceArray<RouteMetrics> statusClasses = routes.get(route);
+		if (statusClasses == null) {
+			String key = routes.size() < MAX_ROUTES ? route : OTHER_ROUTE;
+			statusClasses = routes.computeIfAbsent(key, k -> new AtomicReferenceArray<>(STATUS_CLASSES.length));
+		}
+		int statusClass = status >= 100 && status < 600 ? status / 100 : 0;
+		RouteMetrics metrics = statusClasses.get(statusClass);
+		if (metrics == null) {
+			statusClasses.compareAndSet(statusClass, null, new RouteMetrics());
+			metrics = statusClasses.get(statusClass);
+		}
+		metrics.duration.record(durationNanos);
+		if (requestBytes > 0) {
+			metrics.requestBytes.add(requestBytes);
+		}
+		if (responseBytes > 0) {
+			metrics.responseBytes.add(responseBytes);
+		}
+	}
+
+	public void recordOverhead(long overheadNanos) {
+		overhead.record(overheadNanos);
+	}
+
+	public synchronized void register(String name) {
+		try {
+			ObjectName candidate = new ObjectName(DOMAIN + ":type=LoggingFilter,name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, candidate);
+			objectName = candidate;
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register metrics MBean " + name, e);
+		}
+	}
+
+	public synchronized void unregister() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				// already gone
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public List<RouteStatistics> getRoutes() {
+		List<RouteStatistics> statistics = new ArrayList<>();
+		for (Entry<String, AtomicReferenceArray<RouteMetrics>> route : routes.entrySet()) {
+			AtomicReferenceArray<RouteMetrics> statusClasses = route.getValue();
+			for (int i = 0; i < statusClasses.length(); i++) {
+				RouteMetrics metrics = statusClasses.get(i);
+				if (metrics != null) {
+					Histogram duration = metrics.duration;
+					statistics.add(new RouteStatistics(route.getKey(), STATUS_CLASSES[i], duration.getCount(), duration.getMean(),
+							duration.getPercentile(50), duration.getPercentile(99), duration.getMax(),
+							metrics.requestBytes.sum(), metrics.responseBytes.sum()));
+				}
+			}
+		}
+		return statistics;
+	}
+
+	@Override
+	public long getOverheadCount() {
+		return overhead.getCount();
+	}
+
+	@Override
+	public long getOverheadMeanNanos() {
+		return overhead.getMean();
+	}
+
+	@Override
+	public long getOverheadP50Nanos() {
+		return overhead.getPercentile(50);
+	}
+
+	@Override
+	public long getOverheadP99Nanos() {
+		return overhead.getPercentile(99);
+	}
+
+	@Override
+	public long getOverheadMaxNanos() {
+		return overhead.getMax();
+	}
+
+	@Override
+	public void reset() {
+		routes.clear();
+		overhead.reset();
+	}
+
+	private static final class RouteMetrics {
+
+		private final Histogram duration = new Histogram();
+
+		private final LongAdder requestBytes = new LongAdder();
+
+		private final LongAdder responseBytes = new LongAdder();
+	}
+}
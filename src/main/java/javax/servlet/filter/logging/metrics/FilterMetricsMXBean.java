@@ -0,0 +1,20 @@
+package javax.servlet.filter.logging.metrics;
+
+import java.util.List;
+
+public interface FilterMetricsMXBean {
+
+	List<RouteStatistics> getRoutes();
+
+	long getOverheadCount();
+
+	long getOverheadMeanNanos();
+
+	long getOverheadP50Nanos();
+
+	long getOverheadP99Nanos();
+
+	long getOverheadMaxNanos();
+
+	void reset();
+}
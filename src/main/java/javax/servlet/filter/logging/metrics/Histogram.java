@@ -0,0 +1,94 @@
+package javax.servlet.filter.logging.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of non-negative values. Every power of two is split into 16 buckets, which keeps the
+ * relative error of reported percentiles under 7 % and recording free of allocation.
+ */
+final class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	void record(long value) {
+		long recorded = Math.max(value, 0);
+		buckets.incrementAndGet(indexOf(recorded));
+		count.increment();
+		sum.add(recorded);
+		max.accumulate(recorded);
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	long getMean() {
+		long total = count.sum();
+		return total == 0 ? 0 : sum.sum() / total;
+	}
+
+	long getPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+	}
+
+	private static long highestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,71 @@
+package javax.servlet.filter.logging.metrics;
+
+public final class RouteStatistics {
+
+	private final String route;
+
+	private final String statusClass;
+
+	private final long count;
+
+	private final long meanNanos;
+
+	private final long p50Nanos;
+
+	private final long p99Nanos;
+
+	private final long maxNanos;
+
+	private final long requestBytes;
+
+	private final long responseBytes;
+
+	RouteStatistics(String route, String statusClass, long count, long meanNanos, long p50Nanos, long p99Nanos, long maxNanos,
+			long requestBytes, long responseBytes) {
+		this.route = route;
+		this.statusClass = statusClass;
+		this.count = count;
+		this.meanNanos = meanNanos;
+		this.p50Nanos = p50Nanos;
+		this.p99Nanos = p99Nanos;
+		this.maxNanos = maxNanos;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+	}
+
+	public String getRoute() {
+		return route;
+	}
+
+	public String getStatusClass() {
+		return statusClass;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMeanNanos() {
+		return meanNanos;
+	}
+
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+}
@@ -0,0 +1,100 @@
+package javax.servlet.filter.logging.recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the most recent exchanges in a fixed-size ring so they can be dumped after something went wrong. Recording
+ * claims a slot with one atomic increment and overwrites whatever the slot held, without locks or I/O. A snapshot taken
+ * while requests are recorded may miss exchanges overwritten during the copy.
+ * <p>
+ * Errors, i.e. responses with a 5xx status and failed exchanges, are counted in fixed windows. The exchange which
+ * brings the count of a window to the burst threshold triggers a dump, so a burst triggers at most one dump per
+ * window.
+ */
+public final class FlightRecorder<E> {
+
+	private final AtomicReferenceArray<Entry<E>> ring;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final int errorBurst;
+
+	private final long errorWindowNanos;
+
+	private final AtomicLong errorWindowStart = new AtomicLong(System.nanoTime());
+
+	private final AtomicInteger errors = new AtomicInteger();
+
+	public FlightRecorder(int size) {
+		this(size, 0, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param errorBurst number of errors within the window which triggers a dump, zero disables the trigger
+	 */
+	public FlightRecorder(int size, int errorBurst, long errorWindow, TimeUnit unit) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("size must be positive: " + size);
+		}
+		this.ring = new AtomicReferenceArray<>(size);
+		this.errorBurst = errorBurst;
+		this.errorWindowNanos = unit.toNanos(errorWindow);
+	}
+
+	public int getSize() {
+		return ring.length();
+	}
+
+	public void record(E exchange) {
+		long next = sequence.getAndIncrement();
+		ring.lazySet((int) (next % ring.length()), new Entry<>(next, exchange));
+	}
+
+	/**
+	 * Counts the exchange towards the error burst and returns whether it reached the burst threshold.
+	 */
+	public boolean isBurstReached(int status, boolean failed) {
+		if (errorBurst <= 0 || (status < 500 && !failed)) {
+			return false;
+		}
+		long now = System.nanoTime();
+		long start = errorWindowStart.get();
+		if (now - start >= errorWindowNanos && errorWindowStart.compareAndSet(start, now)) {
+			errors.set(0);
+		}
+		return errors.incrementAndGet() == errorBurst;
+	}
+
+	/**
+	 * Returns the recorded exchanges from the oldest to the most recent.
+	 */
+	public List<E> snapshot() {
+		long end = sequence.get();
+		long start = Math.max(0, end - ring.length());
+		List<E> exchanges = new ArrayList<>((int) (end - start));
+		for (long i = start; i < end; i++) {
+			Entry<E> entry = ring.get((int) (i % ring.length()));
+			if (entry != null && entry.sequence == i) {
+				exchanges.add(entry.exchange);
+			}
+		}
+		return exchanges;
+	}
+
+	private static final class Entry<E> {
+
+		private final long sequence;
+
+		private final E exchange;
+
+		private Entry(long sequence, E exchange) {
+			this.sequence = sequence;
+			this.exchange = exchange;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package javax.servlet.filter.logging.recorder;
+
+import javax.servlet.filter.logging.matcher.HeaderMatcher;
+import javax.servlet.filter.logging.wrapper.CapturedContent;
+import javax.servlet.filter.logging.wrapper.LoggingHttpServletRequestWrapper;
+import javax.servlet.filter.logging.wrapper.LoggingHttpServletResponseWrapper;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the flight recorder keeps of a finished exchange: the request and response metadata, the timing and copies of
+ * the captured body bytes. Decoding, redaction and the descriptions are left to the dump, so recording costs a few
+ * copies whether the exchange is logged or not.
+ */
+public final class RecordedExchange {
+
+	private final String id;
+
+	private final long durationMillis;
+
+	private final String sender;
+
+	private final String method;
+
+	private final String path;
+
+	private final boolean formPost;
+
+	private final Map<String, String> params;
+
+	private final Map<String, List<String>> requestHeaders;
+
+	private final CapturedContent requestContent;
+
+	private final String requestBodyHash;
+
+	private final long requestBodySize;
+
+	private final int status;
+
+	private final Map<String, List<String>> responseHeaders;
+
+	private final CapturedContent responseContent;
+
+	private final String responseBodyHash;
+
+	private final long responseBodySize;
+
+	private RecordedExchange(String id, long durationMillis, LoggingHttpServletRequestWrapper requestWrapper,
+			LoggingHttpServletResponseWrapper responseWrapper, HeaderMatcher headerMatcher) {
+		this.id = id;
+		this.durationMillis = durationMillis;
+		this.sender = requestWrapper.getLocalAddr();
+		this.method = requestWrapper.getMethod();
+		this.path = requestWrapper.getRequestURI();
+		this.formPost = requestWrapper.isFormPost();
+		this.params = formPost ? null : requestWrapper.getParameters();
+		this.requestHeaders = requestWrapper.getHeaders(headerMatcher);
+		this.requestContent = requestWrapper.getCapturedContent();
+		this.requestBodyHash = requestWrapper.getBodyHash();
+		this.requestBodySize = requestWrapper.getBodySize();
+		this.status = responseWrapper.getStatus();
+		this.responseHeaders = responseWrapper.getHeaders(headerMatcher);
+		this.responseContent = responseWrapper.getCapturedContent();
+		this.responseBodyHash = responseWrapper.getBodyHash();
+		this.responseBodySize = responseWrapper.getBodySize();
+	}
+
+	/**
+	 * Copies what is needed to describe the exchange later. The wrappers may be released right after.
+	 */
+	public static RecordedExchange of(String id, long durationMillis, LoggingHttpServletRequestWrapper requestWrapper,
+			LoggingHttpServletResponseWrapper responseWrapper, HeaderMatcher headerMatcher) {
+		return new RecordedExchange(id, durationMillis, requestWrapper, responseWrapper, headerMatcher);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public String getSender() {
+		return sender;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public boolean isFormPost() {
+		return formPost;
+	}
+
+	/**
+	 * Returns the request parameters, or {@code null} for a form post whose parameters are its body.
+	 */
+	public Map<String, String> getParams() {
+		return params;
+	}
+
+	public Map<String, List<String>> getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	public CapturedContent getRequestContent() {
+		return requestContent;
+	}
+
+	public String getRequestBodyHash() {
+		return requestBodyHash;
+	}
+
+	public long getRequestBodySize() {
+		return requestBodySize;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public Map<String, List<String>> getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	public CapturedContent getResponseContent() {
+		return responseContent;
+	}
+
+	public String getResponseBodyHash() {
+		return responseBodyHash;
+	}
+
+	public long getResponseBodySize() {
+		return responseBodySize;
+	}
+}
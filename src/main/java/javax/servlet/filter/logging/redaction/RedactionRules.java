@@ -0,0 +1,444 @@
+package javax.servlet.filter.logging.redaction;
+
+import javax.servlet.filter.logging.matcher.NameMatcher;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Masks sensitive headers, parameters and JSON body fields. Rules are compiled once into case-insensitive name tables
+ * and a tree of JSON field paths. Bodies are scanned in a single pass without being parsed into objects, copying only
+ * when a value is actually masked, and truncated bodies are handled by masking up to the end.
+ * <p>
+ * A JSON field rule without a dot, e.g. {@code password}, masks the field at any depth. A dotted rule, e.g.
+ * {@code card.number} or {@code $.card.number}, is anchored at the document root, {@code *} matches any field name
+ * and array elements are transparent.
+ */
+public final class RedactionRules {
+
+	public static final String MASK = "[REDACTED]";
+
+	public static final List<String> DEFAULT_HEADERS = unmodifiableList(Arrays.asList(
+			"Authorization", "Proxy-Authorization", "Cookie", "Set-Cookie"));
+
+	private static final String QUOTED_MASK = "\"" + MASK + "\"";
+
+	private static final List<String> MASKED_VALUES = Collections.singletonList(MASK);
+
+	private static final String ROOT = "$";
+
+	private static final String ANY_FIELD = "*";
+
+	private static final RedactionRules NONE = compile(emptyList(), emptyList(), emptyList());
+
+	private final NameMatcher headers;
+
+	private final NameMatcher params;
+
+	private final NameMatcher fields;
+
+	private final PathNode paths;
+
+	private RedactionRules(NameMatcher headers, NameMatcher params, NameMatcher fields, PathNode paths) {
+		this.headers = headers;
+		this.params = params;
+		this.fields = fields;
+		this.paths = paths;
+	}
+
+	public static RedactionRules none() {
+		return NONE;
+	}
+
+	public static RedactionRules compile(Collection<String> headers, Collection<String> params, Collection<String> jsonFields) {
+		List<String> fields = new ArrayList<>();
+		List<List<String>> paths = new ArrayList<>();
+		for (String jsonField : jsonFields) {
+			String field = jsonField.trim();
+			if (field.startsWith(ROOT + ".")) {
+				field = field.substring(ROOT.length() + 1);
+			} else if (field.indexOf('.') < 0) {
+				fields.add(field);
+				continue;
+			}
+			paths.add(Arrays.asList(field.split("\\.")));
+		}
+		return new RedactionRules(NameMatcher.compile(headers), NameMatcher.compile(params), NameMatcher.compile(fields),
+				paths.isEmpty() ? null : PathNode.compile(paths, 0));
+	}
+
+	public boolean isEmpty() {
+		return headers.isEmpty() && params.isEmpty() && !hasBodyRules();
+	}
+
+	/**
+	 * Returns whether {@link #redactBody(String, boolean)} may mask anything in a body of the given kind.
+	 */
+	public boolean isBodyRedacted(boolean form) {
+		return form ? !params.isEmpty() : hasBodyRules();
+	}
+
+	public String redactParam(String name, String value) {
+		return value != null && params.matches(name) ? MASK : value;
+	}
+
+	public boolean isRedactedHeader(String name) {
+		return headers.matches(name);
+	}
+
+	public Map<String, List<String>> redactHeaders(Map<String, List<String>> values) {
+		return redact(values, headers, MASKED_VALUES);
+	}
+
+	public Map<String, String> redactParams(Map<String, String> values) {
+		return redact(values, params, MASK);
+	}
+
+	/**
+	 * Masks parameters of a form body and fields of a JSON body. Other bodies are returned unchanged.
+	 */
+	public String redactBody(String body, boolean form) {
+		if (body == null || body.isEmpty()) {
+			return body;
+		}
+		if (form) {
+			return params.isEmpty() ? body : redactForm(body);
+		}
+		if (!hasBodyRules()) {
+			return body;
+		}
+		int start = skipWhitespace(body, 0);
+		if (start == body.length() || (body.charAt(start) != '{' && body.charAt(start) != '[')) {
+			return body;
+		}
+		return new JsonScanner(body).redact(start);
+	}
+
+	private boolean hasBodyRules() {
+		return !fields.isEmpty() || paths != null;
+	}
+
+	private static <V> Map<String, V> redact(Map<String, V> values, NameMatcher names, V mask) {
+		if (values == null || names.isEmpty()) {
+			return values;
+		}
+		Map<String, V> redacted = values;
+		for (Map.Entry<String, V> entry : values.entrySet()) {
+			if (entry.getValue() != null && names.matches(entry.getKey())) {
+				if (redacted == values) {
+					redacted = new LinkedHashMap<>(values);
+				}
+				redacted.put(entry.getKey(), mask);
+			}
+		}
+		return redacted;
+	}
+
+	private String redactForm(String body) {
+		StringBuilder out = null;
+		int copied = 0;
+		int length = body.length();
+		for (int start = 0; start < length; ) {
+			int end = body.indexOf('&', start);
+			if (end < 0) {
+				end = length;
+			}
+			int equals = body.indexOf('=', start);
+			if (equals >= 0 && equals < end && isRedactedFormName(body, start, equals)) {
+				if (out == null) {
+					out = new StringBuilder(length + MASK.length());
+				}
+				out.append(body, copied, equals + 1).append(MASK);
+				copied = end;
+			}
+			start = end + 1;
+		}
+		return out == null ? body : out.append(body, copied, length).toString();
+	}
+
+	/**
+	 * Matches a form parameter name as the container decodes it, so {@code card%5Bnumber%5D} is masked by a
+	 * {@code card[number]} rule. A malformed escape is matched as written.
+	 */
+	private boolean isRedactedFormName(String body, int start, int end) {
+		if (params.indexOf(body, start, end) >= 0) {
+			return true;
+		}
+		for (int i = start; i < end; i++) {
+			char c = body.charAt(i);
+			if (c == '%' || c == '+') {
+				try {
+					String name = URLDecoder.decode(body.substring(start, end), StandardCharsets.UTF_8);
+					return params.indexOf(name, 0, name.length()) >= 0;
+				} catch (IllegalArgumentException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static int skipWhitespace(String text, int index) {
+		while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	private static final class PathNode {
+
+		private final NameMatcher names;
+
+		private final PathNode[] children;
+
+		private final PathNode anyChild;
+
+		private final boolean terminal;
+
+		private PathNode(NameMatcher names, PathNode[] children, PathNode anyChild, boolean terminal) {
+			this.names = names;
+			this.children = children;
+			this.anyChild = anyChild;
+			this.terminal = terminal;
+		}
+
+		private static PathNode compile(List<List<String>> paths, int depth) {
+			boolean terminal = false;
+			Map<String, List<List<String>>> byName = new HashMap<>();
+			List<List<String>> any = new ArrayList<>();
+			for (List<String> path : paths) {
+				if (path.size() == depth) {
+					terminal = true;
+					continue;
+				}
+				String segment = path.get(depth).trim();
+				if (ANY_FIELD.equals(segment)) {
+					any.add(path);
+				} else {
+					byName.computeIfAbsent(segment.toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(path);
+				}
+			}
+			NameMatcher names = NameMatcher.compile(byName.keySet());
+			PathNode[] children = new PathNode[names.size()];
+			for (int i = 0; i < children.length; i++) {
+				List<List<String>> childPaths = new ArrayList<>(byName.get(names.getName(i)));
+				childPaths.addAll(any);
+				children[i] = compile(childPaths, depth + 1);
+			}
+			return new PathNode(names, children, any.isEmpty() ? null : compile(any, depth + 1), terminal);
+		}
+
+		private PathNode child(CharSequence text, int start, int end) {
+			int index = names.indexOf(text, start, end);
+			return index >= 0 ? children[index] : anyChild;
+		}
+	}
+
+	/**
+	 * Single pass over a possibly truncated JSON text tracking only the container nesting and the path node of every
+	 * open object.
+	 */
+	private final class JsonScanner {
+
+		private final String text;
+
+		private final int length;
+
+		private StringBuilder out;
+
+		private int copied;
+
+		private boolean[] objects = new boolean[16];
+
+		private PathNode[] nodes = new PathNode[16];
+
+		private int depth;
+
+		private JsonScanner(String text) {
+			this.text = text;
+			this.length = text.length();
+		}
+
+		private String redact(int index) {
+			PathNode valueNode = paths;
+			boolean expectKey = false;
+			while (index < length) {
+				char c = text.charAt(index);
+				if (expectKey && c == '"') {
+					int keyEnd = skipString(index);
+					String unescaped = null;
+					int keyStart = index + 1;
+					int keyLimit = Math.max(keyStart, keyEnd - 1);
+					if (hasEscape(keyStart, keyLimit)) {
+						unescaped = unescape(keyStart, keyLimit);
+					}
+					PathNode parent = nodes[depth - 1];
+					PathNode child;
+					boolean redacted;
+					if (unescaped != null) {
+						child = parent != null ? parent.child(unescaped, 0, unescaped.length()) : null;
+						redacted = fields.indexOf(unescaped, 0, unescaped.length()) >= 0;
+					} else {
+						child = parent != null ? parent.child(text, keyStart, keyLimit) : null;
+						redacted = fields.indexOf(text, keyStart, keyLimit) >= 0;
+					}
+					index = skipWhitespace(text, keyEnd);
+					if (index < length && text.charAt(index) == ':') {
+						index = skipWhitespace(text, index + 1);
+					}
+					expectKey = false;
+					if (redacted || (child != null && child.terminal)) {
+						int valueEnd = skipValue(index);
+						mask(index, valueEnd);
+						index = valueEnd;
+					} else {
+						valueNode = child;
+					}
+					continue;
+				}
+				switch (c) {
+					case '{':
+						push(true, valueNode);
+						expectKey = true;
+						break;
+					case '[':
+						push(false, valueNode);
+						break;
+					case '}':
+					case ']':
+						if (depth > 0) {
+							depth--;
+						}
+						break;
+					case ',':
+						expectKey = depth > 0 && objects[depth - 1];
+						valueNode = depth > 0 && !objects[depth - 1] ? nodes[depth - 1] : null;
+						break;
+					case '"':
+						index = skipString(index);
+						continue;
+					default:
+						break;
+				}
+				index++;
+			}
+			return out == null ? text : out.append(text, copied, length).toString();
+		}
+
+		private void push(boolean object, PathNode node) {
+			if (depth == objects.length) {
+				objects = Arrays.copyOf(objects, depth * 2);
+				nodes = Arrays.copyOf(nodes, depth * 2);
+			}
+			objects[depth] = object;
+			nodes[depth] = node;
+			depth++;
+		}
+
+		private void mask(int start, int end) {
+			if (start >= length) {
+				return;
+			}
+			if (out == null) {
+				out = new StringBuilder(length + QUOTED_MASK.length());
+			}
+			out.append(text, copied, start).append(QUOTED_MASK);
+			copied = end;
+		}
+
+		private int skipValue(int index) {
+			if (index >= length) {
+				return length;
+			}
+			char c = text.charAt(index);
+			if (c == '"') {
+				return skipString(index);
+			}
+			if (c == '{' || c == '[') {
+				int nesting = 0;
+				while (index < length) {
+					c = text.charAt(index);
+					if (c == '"') {
+						index = skipString(index);
+						continue;
+					}
+					if (c == '{' || c == '[') {
+						nesting++;
+					} else if ((c == '}' || c == ']') && --nesting == 0) {
+						return index + 1;
+					}
+					index++;
+				}
+				return length;
+			}
+			while (index < length) {
+				c = text.charAt(index);
+				if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+					return index;
+				}
+				index++;
+			}
+			return length;
+		}
+
+		private int skipString(int index) {
+			for (int i = index + 1; i < length; i++) {
+				char c = text.charAt(i);
+				if (c == '\\') {
+					i++;
+				} else if (c == '"') {
+					return i + 1;
+				}
+			}
+			return length;
+		}
+
+		private boolean hasEscape(int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (text.charAt(i) == '\\') {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean isHex(int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (Character.digit(text.charAt(i), 16) < 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private String unescape(int start, int end) {
+			StringBuilder key = new StringBuilder(end - start);
+			for (int i = start; i < end; i++) {
+				char c = text.charAt(i);
+				if (c == '\\' && i + 1 < end) {
+					char escaped = text.charAt(++i);
+					if (escaped == 'u' && i + 4 < end && isHex(i + 1, i + 5)) {
+						key.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+						i += 4;
+					} else {
+						key.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped == 'r' ? '\r' : escaped == 'b' ? '\b' : escaped == 'f' ? '\f' : escaped);
+					}
+				} else {
+					key.append(c);
+				}
+			}
+			return key.toString();
+		}
+	}
+}
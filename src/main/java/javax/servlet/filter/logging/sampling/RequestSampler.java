@@ -0,0 +1,114 @@
+package javax.servlet.filter.logging.sampling;
+
+import javax.servlet.filter.logging.matcher.PathMatcher;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides up front whether an exchange is logged at all. A request has to pass the probability check first and then
+ * take a token from the bucket of its route limit, or from the default bucket of its route when no route limit matches.
+ * Every route gets its own default bucket, so a busy route cannot use up the budget of the others; past
+ * {@value #MAX_ROUTES} routes the remaining ones share one bucket.
+ */
+public final class RequestSampler {
+
+	private static final int MAX_ROUTES = 1000;
+
+	private static final RequestSampler ALWAYS = new RequestSampler(1.0, -1, new LinkedHashMap<>(), PathMatcher.empty());
+
+	private final double probability;
+
+	private final int limit;
+
+	private final Map<String, Integer> routeLimits;
+
+	private final PathMatcher<TokenBucket> routeBuckets;
+
+	private final ConcurrentMap<String, TokenBucket> defaultBuckets = new ConcurrentHashMap<>();
+
+	private final TokenBucket overflowBucket;
+
+	private RequestSampler(double probability, int limit, Map<String, Integer> routeLimits, PathMatcher<TokenBucket> routeBuckets) {
+		this.probability = probability;
+		this.limit = limit;
+		this.routeLimits = routeLimits;
+		this.routeBuckets = routeBuckets;
+		this.overflowBucket = limit < 0 ? null : new TokenBucket(limit);
+	}
+
+	public static RequestSampler always() {
+		return ALWAYS;
+	}
+
+	/**
+	 * @param probability  fraction of requests sampled, between 0 and 1
+	 * @param limit        records per second of every route without its own limit, negative for no limit
+	 * @param routeLimits  records per second keyed by path pattern, every pattern gets its own bucket, 0 logs nothing
+	 */
+	public static RequestSampler create(double probability, int limit, Map<String, Integer> routeLimits) {
+		return create(probability, limit, routeLimits, null);
+	}
+
+	/**
+	 * Returns the current sampler when the settings did not change, so its buckets keep their state across a change of
+	 * unrelated settings instead of being refilled.
+	 */
+	public static RequestSampler create(double probability, int limit, Map<String, Integer> routeLimits, RequestSampler current) {
+		requireNonNull(routeLimits, "routeLimits must not be null");
+		if (probability < 0.0 || probability > 1.0) {
+			throw new IllegalArgumentException("probability must be between 0 and 1");
+		}
+		if (probability >= 1.0 && limit < 0 && routeLimits.isEmpty()) {
+			return ALWAYS;
+		}
+		if (current != null && current.probability == probability && current.limit == limit && current.routeLimits.equals(routeLimits)) {
+			return current;
+		}
+		Map<String, TokenBucket> buckets = new LinkedHashMap<>();
+		for (Entry<String, Integer> routeLimit : routeLimits.entrySet()) {
+			buckets.put(routeLimit.getKey(), new TokenBucket(routeLimit.getValue()));
+		}
+		return new RequestSampler(probability, limit, new LinkedHashMap<>(routeLimits), PathMatcher.compile(buckets));
+	}
+
+	public boolean sample(String path) {
+		return sample(path, path);
+	}
+
+	/**
+	 * @param route key of the default bucket, the servlet mapping pattern of the request for example
+	 */
+	public boolean sample(String path, String route) {
+		if (this == ALWAYS) {
+			return true;
+		}
+		if (probability < 1.0 && ThreadLocalRandom.current().nextDouble() >= probability) {
+			return false;
+		}
+		TokenBucket bucket = routeBuckets.match(path);
+		if (bucket == null) {
+			bucket = getDefaultBucket(route);
+		}
+		return bucket == null || bucket.tryAcquire();
+	}
+
+	private TokenBucket getDefaultBucket(String route) {
+		if (overflowBucket == null) {
+			return null;
+		}
+		TokenBucket bucket = defaultBuckets.get(route);
+		if (bucket == null) {
+			if (defaultBuckets.size() >= MAX_ROUTES) {
+				return overflowBucket;
+			}
+			bucket = defaultBuckets.computeIfAbsent(route, k -> new TokenBucket(limit));
+		}
+		return bucket;
+	}
+}
@@ -0,0 +1,45 @@
+package javax.servlet.filter.logging.sampling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket holding one second worth of tokens, implemented as a generic cell rate algorithm over a
+ * single theoretical arrival time.
+ */
+final class TokenBucket {
+
+	private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final long intervalNanos;
+
+	private final long toleranceNanos;
+
+	private final AtomicLong theoreticalArrivalNanos;
+
+	TokenBucket(int permitsPerSecond) {
+		if (permitsPerSecond < 0) {
+			throw new IllegalArgumentException("permitsPerSecond must not be negative");
+		}
+		this.intervalNanos = permitsPerSecond > 0 ? Math.max(1, SECOND_NANOS / permitsPerSecond) : 0;
+		this.toleranceNanos = SECOND_NANOS - intervalNanos;
+		this.theoreticalArrivalNanos = new AtomicLong(System.nanoTime() - SECOND_NANOS);
+	}
+
+	boolean tryAcquire() {
+		if (intervalNanos == 0) {
+			return false;
+		}
+		long now = System.nanoTime();
+		while (true) {
+			long theoreticalArrival = theoreticalArrivalNanos.get();
+			if (theoreticalArrival - now > toleranceNanos) {
+				return false;
+			}
+			long next = Math.max(theoreticalArrival, now) + intervalNanos;
+			if (theoreticalArrivalNanos.compareAndSet(theoreticalArrival, next)) {
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package javax.servlet.filter.logging.wrapper;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free pool of fixed-size capture buffers, either heap slabs or direct buffers. Buffers are leased by the wrappers
+ * on the first captured byte and returned when the exchange has been logged. A miss allocates a buffer which is kept
+ * on return if there is room in the pool.
+ */
+public class CaptureBufferPool {
+
+	private final AtomicReferenceArray<ByteBuffer> slots;
+
+	private final int slabSize;
+
+	private final boolean direct;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder discarded = new LongAdder();
+
+	public CaptureBufferPool(int capacity, int slabSize, boolean direct) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		if (slabSize < 1) {
+			throw new IllegalArgumentException("slabSize must be positive");
+		}
+		this.slots = new AtomicReferenceArray<>(capacity);
+		this.slabSize = slabSize;
+		this.direct = direct;
+	}
+
+	ByteBuffer acquire() {
+		int capacity = slots.length();
+		int start = probe(capacity);
+		for (int i = 0; i < capacity; i++) {
+			int index = (start + i) % capacity;
+			if (slots.get(index) != null) {
+				ByteBuffer buffer = slots.getAndSet(index, null);
+				if (buffer != null) {
+					hits.increment();
+					return buffer;
+				}
+			}
+		}
+		misses.increment();
+		return direct ? ByteBuffer.allocateDirect(slabSize) : ByteBuffer.allocate(slabSize);
+	}
+
+	void release(ByteBuffer buffer) {
+		buffer.clear();
+		int capacity = slots.length();
+		int start = probe(capacity);
+		for (int i = 0; i < capacity; i++) {
+			int index = (start + i) % capacity;
+			if (slots.get(index) == null && slots.compareAndSet(index, null, buffer)) {
+				return;
+			}
+		}
+		discarded.increment();
+	}
+
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	public int getSlabSize() {
+		return slabSize;
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+
+	public int getAvailableCount() {
+		int available = 0;
+		for (int i = 0; i < slots.length(); i++) {
+			if (slots.get(i) != null) {
+				available++;
+			}
+		}
+		return available;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getDiscardedCount() {
+		return discarded.sum();
+	}
+
+	private static int probe(int capacity) {
+		return (int) (Thread.currentThread().getId() % capacity);
+	}
+}
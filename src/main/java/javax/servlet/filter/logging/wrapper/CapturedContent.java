@@ -0,0 +1,56 @@
+package javax.servlet.filter.logging.wrapper;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Captured body detached from its wrapper, so it can be decoded after the exchange is finished and the wrapper is
+ * released. It holds a copy of the captured bytes, the text of a form body, or the description of a body which is not
+ * decoded at all.
+ */
+public final class CapturedContent {
+
+	private final String text;
+
+	private final byte[] bytes;
+
+	private final boolean complete;
+
+	private final Charset charset;
+
+	private final boolean normalized;
+
+	private CapturedContent(String text, byte[] bytes, boolean complete, Charset charset, boolean normalized) {
+		this.text = text;
+		this.bytes = bytes;
+		this.complete = complete;
+		this.charset = charset;
+		this.normalized = normalized;
+	}
+
+	static CapturedContent of(String text, boolean normalized) {
+		return new CapturedContent(text, null, true, null, normalized);
+	}
+
+	static CapturedContent of(byte[] bytes, boolean complete, Charset charset, boolean normalized) {
+		return new CapturedContent(null, bytes, complete, charset, normalized);
+	}
+
+	/**
+	 * Returns at most the given number of characters of the body, formatted like the wrapper it was taken from would.
+	 */
+	public String toString(int maxChars) {
+		if (bytes == null && !normalized) {
+			return text;
+		}
+		String content = bytes != null ? ContentCapture.decode(ByteBuffer.wrap(bytes), complete, charset, maxChars) : StringUtils.left(text, maxChars);
+		return normalized ? normalize(content) : content;
+	}
+
+	static String normalize(String content) {
+		String normalizedContent = StringUtils.normalizeSpace(content);
+		return StringUtils.isBlank(normalizedContent) ? "[EMPTY]" : normalizedContent;
+	}
+}
@@ -0,0 +1,380 @@
+package javax.servlet.filter.logging.wrapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Captured prefix of a body. The capture lives in a heap buffer, optionally leased from a pool, until the
+ * {@link SpillPolicy} moves it to a temporary file which is then read through a memory mapping. Writes to the file go
+ * through a small heap staging buffer, so a body written byte by byte costs one file write per staging buffer rather
+ * than one per byte; the staging buffer is flushed before the capture is read. A spill file that cannot be written or
+ * mapped, on a full disk for example, is deleted and the capture is marked as lost: the application's own I/O never
+ * fails because of the capture, and further bytes are only counted.
+ * <p>
+ * The methods are synchronized: an asynchronous exchange may be finished and released on a container thread, after a
+ * timeout for example, while the application still writes through the tee. Writes after the release are only counted, so
+ * a buffer returned to the pool is never written again.
+ */
+class ContentCapture {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private static final int STAGING_CAPACITY = 16 * 1024;
+
+	static String describeBinary(long size) {
+		return size < 0 ? "[BINARY]" : "[BINARY " + size + " bytes]";
+	}
+
+	static String describeSpilled(long size) {
+		return "[SPILLED " + size + " bytes]";
+	}
+
+	static String describeLost(long size) {
+		return "[LOST " + size + " bytes]";
+	}
+
+	private final int limit;
+
+	private final CaptureBufferPool pool;
+
+	private final SpillPolicy spillPolicy;
+
+	private ByteBuffer buffer;
+
+	private Path file;
+
+	private FileChannel channel;
+
+	private ByteBuffer staging;
+
+	private int fileSize;
+
+	private boolean spillFailed;
+
+	private boolean pooled;
+
+	private boolean released;
+
+	private boolean lost;
+
+	private long total;
+
+	ContentCapture(int limit) {
+		this(limit, null);
+	}
+
+	ContentCapture(int limit, CaptureBufferPool pool) {
+		this(limit, pool, SpillPolicy.none());
+	}
+
+	ContentCapture(int limit, CaptureBufferPool pool, SpillPolicy spillPolicy) {
+		this.limit = Math.max(limit, 0);
+		this.pool = pool != null && this.limit <= pool.getSlabSize() ? pool : null;
+		this.spillPolicy = spillPolicy != null ? spillPolicy : SpillPolicy.none();
+	}
+
+	synchronized void write(int b) {
+		total++;
+		if (released || lost || size() >= limit) {
+			return;
+		}
+		if (channel == null && spillPolicy.shouldSpill(limit, (long) size() + 1) && !spill() && size() >= spillPolicy.getThreshold()) {
+			return;
+		}
+		if (channel != null) {
+			if (staging.hasRemaining() || flushStaging()) {
+				staging.put((byte) b);
+			}
+		} else if (ensureCapacity(size() + 1)) {
+			buffer.put((byte) b);
+		}
+	}
+
+	synchronized void write(byte[] b, int off, int len) {
+		total += len;
+		if (released || lost) {
+			return;
+		}
+		int captured = Math.min(len, limit - size());
+		if (captured <= 0) {
+			return;
+		}
+		if (channel == null && spillPolicy.shouldSpill(limit, (long) size() + captured) && !spill()) {
+			captured = Math.min(captured, spillPolicy.getThreshold() - size());
+		}
+		if (channel != null) {
+			stage(b, off, captured);
+		} else if (captured > 0 && ensureCapacity(size() + captured)) {
+			buffer.put(b, off, captured);
+		}
+	}
+
+	synchronized void reset() {
+		if (buffer != null) {
+			buffer.clear();
+		}
+		deleteFile();
+		lost = false;
+		total = 0;
+	}
+
+	synchronized void release() {
+		if (buffer != null && pooled) {
+			pool.release(buffer);
+		}
+		buffer = null;
+		deleteFile();
+		released = true;
+	}
+
+	synchronized boolean isSpilled() {
+		return channel != null;
+	}
+
+	/**
+	 * Returns whether the spilled capture was dropped because its file could not be written or read.
+	 */
+	synchronized boolean isLost() {
+		return lost;
+	}
+
+	/**
+	 * Decodes the capture chunk by chunk, so a spilled capture is never held in memory as a whole.
+	 */
+	synchronized void decode(Charset charset, int chunkSize, Consumer<String> consumer) {
+		ByteBuffer source = view();
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chunk = CharBuffer.allocate(Math.max(chunkSize, 2));
+		CoderResult result;
+		do {
+			result = decoder.decode(source, chunk, true);
+			if (result.isOverflow()) {
+				emit(chunk, consumer);
+			}
+		} while (result.isOverflow());
+		while (decoder.flush(chunk).isOverflow()) {
+			emit(chunk, consumer);
+		}
+		if (chunk.position() > 0) {
+			emit(chunk, consumer);
+		}
+	}
+
+	private static void emit(CharBuffer chunk, Consumer<String> consumer) {
+		chunk.flip();
+		consumer.accept(chunk.toString());
+		chunk.clear();
+	}
+
+	private boolean spill() {
+		if (spillFailed || released) {
+			return false;
+		}
+		ByteBuffer captured = view();
+		try {
+			file = spillPolicy.createFile();
+			channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		} catch (IOException e) {
+			spillFailed = true;
+			deleteFile();
+			return false;
+		}
+		if (!writeFile(captured)) {
+			spillFailed = true;
+			deleteFile();
+			return false;
+		}
+		staging = ByteBuffer.allocate(Math.min(STAGING_CAPACITY, limit));
+		if (buffer != null) {
+			if (pooled) {
+				pool.release(buffer);
+				pooled = false;
+			}
+			buffer = null;
+		}
+		return true;
+	}
+
+	private void stage(byte[] b, int off, int len) {
+		if (len >= staging.capacity()) {
+			if (flushStaging() && !writeFile(ByteBuffer.wrap(b, off, len))) {
+				abandonSpill();
+			}
+			return;
+		}
+		if (staging.remaining() < len && !flushStaging()) {
+			return;
+		}
+		staging.put(b, off, len);
+	}
+
+	/**
+	 * Writes the staged bytes to the file, abandoning the spill when that fails.
+	 */
+	private boolean flushStaging() {
+		if (staging == null || staging.position() == 0) {
+			return true;
+		}
+		staging.flip();
+		if (!writeFile(staging)) {
+			abandonSpill();
+			return false;
+		}
+		staging.clear();
+		return true;
+	}
+
+	private boolean writeFile(ByteBuffer source) {
+		try {
+			while (source.hasRemaining()) {
+				fileSize += channel.write(source, fileSize);
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private void abandonSpill() {
+		spillFailed = true;
+		lost = true;
+		deleteFile();
+	}
+
+	private void deleteFile() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// deleted below
+			}
+			channel = null;
+		}
+		staging = null;
+		if (file != null) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				file.toFile().deleteOnExit();
+			}
+			file = null;
+		}
+		fileSize = 0;
+	}
+
+	synchronized boolean isFull() {
+		return size() >= limit;
+	}
+
+	synchronized int size() {
+		if (channel != null) {
+			return fileSize + staging.position();
+		}
+		return buffer == null ? 0 : buffer.position();
+	}
+
+	synchronized long total() {
+		return total;
+	}
+
+	synchronized byte[] toByteArray() {
+		byte[] content = new byte[size()];
+		view().get(content);
+		return content;
+	}
+
+	int limit() {
+		return limit;
+	}
+
+	synchronized ByteBuffer view() {
+		if (channel != null && flushStaging()) {
+			try {
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+			} catch (IOException e) {
+				abandonSpill();
+			}
+		}
+		if (buffer == null) {
+			return ByteBuffer.allocate(0);
+		}
+		ByteBuffer view = buffer.duplicate();
+		view.flip();
+		return view;
+	}
+
+	synchronized String toString(Charset charset) {
+		return toString(charset, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Decodes at most the given number of characters from the start of the capture. A multibyte sequence cut off by
+	 * the capture limit is left out rather than decoded into a replacement character.
+	 */
+	synchronized String toString(Charset charset, int maxChars) {
+		return decode(view(), isComplete(), charset, maxChars);
+	}
+
+	/**
+	 * Copies the in-memory capture, so it can be decoded after the capture is released.
+	 */
+	synchronized CapturedContent snapshot(Charset charset, boolean normalized) {
+		ByteBuffer source = view();
+		byte[] bytes = new byte[source.remaining()];
+		source.get(bytes);
+		return CapturedContent.of(bytes, isComplete(), charset, normalized);
+	}
+
+	private boolean isComplete() {
+		return total == size() && !isFull();
+	}
+
+	static String decode(ByteBuffer source, boolean complete, Charset charset, int maxChars) {
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		double maxDecoded = Math.ceil(source.remaining() * (double) decoder.maxCharsPerByte());
+		if (complete && source.hasArray() && maxDecoded <= maxChars) {
+			return new String(source.array(), source.arrayOffset() + source.position(), source.remaining(), charset);
+		}
+		CharBuffer decoded = CharBuffer.allocate((int) Math.min(maxChars, maxDecoded));
+		if (decoder.decode(source, decoded, complete).isUnderflow() && complete) {
+			decoder.flush(decoded);
+		}
+		decoded.flip();
+		return decoded.toString();
+	}
+
+	private boolean ensureCapacity(int capacity) {
+		if (released) {
+			return false;
+		}
+		if (buffer == null) {
+			if (pool != null) {
+				buffer = pool.acquire();
+				pooled = true;
+			} else {
+				buffer = ByteBuffer.allocate(Math.min(limit, Math.max(capacity, INITIAL_CAPACITY)));
+			}
+		} else if (capacity > buffer.capacity()) {
+			int newCapacity = (int) Math.min(limit, Math.max((long) buffer.capacity() << 1, capacity));
+			ByteBuffer grown = ByteBuffer.allocate(newCapacity);
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,190 @@
+package javax.servlet.filter.logging.wrapper;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates a gzip or deflate encoded body into a capture while it is written. Inflation stops for good as soon as the
+ * capture is full, so the work done is bounded by the capture limit and not by the body size. Like the capture, it may
+ * be ended on another thread than the one writing, so its methods are synchronized.
+ */
+final class ContentInflater {
+
+	private static final String GZIP = "gzip";
+
+	private static final String X_GZIP = "x-gzip";
+
+	private static final String DEFLATE = "deflate";
+
+	private static final int OUTPUT_BUFFER_SIZE = 4096;
+
+	private static final int MAX_HEADER_SIZE = 4096;
+
+	private static final int GZIP_MAGIC = 0x8b1f;
+
+	private static final int GZIP_HEADER_SIZE = 10;
+
+	private static final int FHCRC = 2;
+
+	private static final int FEXTRA = 4;
+
+	private static final int FNAME = 8;
+
+	private static final int FCOMMENT = 16;
+
+	private static final int INCOMPLETE = -1;
+
+	private final ContentCapture target;
+
+	private final boolean gzip;
+
+	private final String encoding;
+
+	private byte[] header = new byte[0];
+
+	private byte[] output;
+
+	private Inflater inflater;
+
+	private boolean done;
+
+	private boolean corrupted;
+
+	private long total;
+
+	ContentInflater(String contentEncoding, ContentCapture target) {
+		this.encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+		this.gzip = !DEFLATE.equals(encoding);
+		this.target = target;
+	}
+
+	static boolean isSupported(String contentEncoding) {
+		if (contentEncoding == null) {
+			return false;
+		}
+		String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+		return GZIP.equals(encoding) || X_GZIP.equals(encoding) || DEFLATE.equals(encoding);
+	}
+
+	synchronized void write(int b) {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	synchronized void write(byte[] b, int off, int len) {
+		total += len;
+		if (done || len == 0) {
+			return;
+		}
+		try {
+			if (inflater == null) {
+				readHeader(b, off, len);
+			} else {
+				inflate(b, off, len);
+			}
+		} catch (DataFormatException e) {
+			corrupted = true;
+			end();
+		}
+	}
+
+	synchronized boolean isCorrupted() {
+		return corrupted;
+	}
+
+	String getEncoding() {
+		return encoding;
+	}
+
+	synchronized long total() {
+		return total;
+	}
+
+	synchronized void end() {
+		done = true;
+		header = null;
+		output = null;
+		if (inflater != null) {
+			inflater.end();
+		}
+	}
+
+	private void readHeader(byte[] b, int off, int len) throws DataFormatException {
+		int pending = header.length;
+		header = Arrays.copyOf(header, pending + len);
+		System.arraycopy(b, off, header, pending, len);
+		int headerSize = gzip ? gzipHeaderSize(header) : 0;
+		if (headerSize == INCOMPLETE) {
+			if (header.length > MAX_HEADER_SIZE) {
+				throw new DataFormatException("GZIP header too long");
+			}
+			return;
+		}
+		if (!gzip && header.length < 2) {
+			return;
+		}
+		inflater = new Inflater(gzip || !hasZlibHeader(header));
+		output = new byte[Math.min(target.limit(), OUTPUT_BUFFER_SIZE)];
+		byte[] buffered = header;
+		header = null;
+		inflate(buffered, headerSize, buffered.length - headerSize);
+	}
+
+	private void inflate(byte[] b, int off, int len) throws DataFormatException {
+		inflater.setInput(b, off, len);
+		while (!target.isFull() && !inflater.finished()) {
+			int inflated = inflater.inflate(output);
+			if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+				return;
+			}
+			target.write(output, 0, inflated);
+		}
+		end();
+	}
+
+	private static boolean hasZlibHeader(byte[] data) {
+		int cmf = data[0] & 0xff;
+		int flg = data[1] & 0xff;
+		return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+	}
+
+	private static int gzipHeaderSize(byte[] data) throws DataFormatException {
+		if (data.length < GZIP_HEADER_SIZE) {
+			return INCOMPLETE;
+		}
+		if (((data[0] & 0xff) | (data[1] & 0xff) << 8) != GZIP_MAGIC) {
+			throw new DataFormatException("Not in GZIP format");
+		}
+		int flags = data[3] & 0xff;
+		int position = GZIP_HEADER_SIZE;
+		if ((flags & FEXTRA) != 0) {
+			if (data.length < position + 2) {
+				return INCOMPLETE;
+			}
+			position += 2 + ((data[position] & 0xff) | (data[position + 1] & 0xff) << 8);
+		}
+		if ((flags & FNAME) != 0) {
+			position = skipZeroTerminated(data, position);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			position = skipZeroTerminated(data, position);
+		}
+		if ((flags & FHCRC) != 0 && position != INCOMPLETE) {
+			position += 2;
+		}
+		return position == INCOMPLETE || position > data.length ? INCOMPLETE : position;
+	}
+
+	private static int skipZeroTerminated(byte[] data, int position) {
+		if (position == INCOMPLETE) {
+			return INCOMPLETE;
+		}
+		for (int i = position; i < data.length; i++) {
+			if (data[i] == 0) {
+				return i + 1;
+			}
+		}
+		return INCOMPLETE;
+	}
+}
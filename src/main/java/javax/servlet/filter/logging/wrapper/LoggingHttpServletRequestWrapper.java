@@ -1,28 +1,36 @@
 package javax.servlet.filter.logging.wrapper;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.filter.logging.digest.BodyDigest;
+import javax.servlet.filter.logging.matcher.ContentTypeMatcher;
+import javax.servlet.filter.logging.matcher.HeaderMatcher;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class LoggingHttpServletRequestWrapper extends HttpServletRequestWrapper {
@@ -31,103 +39,318 @@ public class LoggingHttpServletRequestWrapper extends HttpServletRequestWrapper
 
 	private static final String METHOD_POST = "POST";
 
-	private byte[] content;
+	private static final int DRAIN_BUFFER_SIZE = 4096;
 
-	private final Map<String, String[]> parameterMap;
+	private static final int MIN_REJECTED_STATUS = 400;
+
+	private final ContentCapture capture;
+
+	private final boolean captured;
+
+	private final BodyDigest digest;
 
 	private final HttpServletRequest delegate;
 
+	private LoggingServletInputStream loggingServletInputStream;
+
+	private BufferedReader reader;
+
+	private LoggingServletInputStream readerInputStream;
+
+	private boolean finished;
+
+	private ServletResponse boundResponse;
+
+	private boolean asyncStarted;
+
 	public LoggingHttpServletRequestWrapper(HttpServletRequest request) {
+		this(request, Integer.MAX_VALUE);
+	}
+
+	public LoggingHttpServletRequestWrapper(HttpServletRequest request, int maxContentSize) {
+		this(request, maxContentSize, null);
+	}
+
+	public LoggingHttpServletRequestWrapper(HttpServletRequest request, int maxContentSize, CaptureBufferPool bufferPool) {
+		this(request, maxContentSize, bufferPool, null);
+	}
+
+	public LoggingHttpServletRequestWrapper(HttpServletRequest request, int maxContentSize, CaptureBufferPool bufferPool,
+			ContentTypeMatcher capturedContentTypes) {
+		this(request, maxContentSize, bufferPool, capturedContentTypes, SpillPolicy.none());
+	}
+
+	public LoggingHttpServletRequestWrapper(HttpServletRequest request, int maxContentSize, CaptureBufferPool bufferPool,
+			ContentTypeMatcher capturedContentTypes, SpillPolicy spillPolicy) {
+		this(request, maxContentSize, bufferPool, capturedContentTypes, spillPolicy, null);
+	}
+
+	/**
+	 * @param bodyDigest factory of the digest computed over the whole body whether it is captured or not, {@code null}
+	 *                   computes none
+	 */
+	public LoggingHttpServletRequestWrapper(HttpServletRequest request, int maxContentSize, CaptureBufferPool bufferPool,
+			ContentTypeMatcher capturedContentTypes, SpillPolicy spillPolicy, Supplier<BodyDigest> bodyDigest) {
 		super(request);
 		this.delegate = request;
-		if (isFormPost()) {
-			this.parameterMap = request.getParameterMap();
-		} else {
-			this.parameterMap = Collections.emptyMap();
-		}
+		this.capture = new ContentCapture(maxContentSize, bufferPool, spillPolicy);
+		this.captured = capturedContentTypes == null || capturedContentTypes.matches(request.getContentType(), request.getContentLengthLong());
+		this.digest = bodyDigest != null ? bodyDigest.get() : null;
 	}
 
 	@Override
 	public ServletInputStream getInputStream() throws IOException {
-		if (ArrayUtils.isEmpty(content)) {
+		if (!captured && digest == null) {
 			return delegate.getInputStream();
 		}
-		return new LoggingServletInputStream(content);
+		if (reader != null) {
+			throw new IllegalStateException("getReader() has already been called for this request");
+		}
+		if (loggingServletInputStream == null) {
+			loggingServletInputStream = new LoggingServletInputStream(delegate.getInputStream());
+		}
+		return loggingServletInputStream;
 	}
 
 	@Override
 	public BufferedReader getReader() throws IOException {
-		if (ArrayUtils.isEmpty(content)) {
+		if (!captured && digest == null) {
 			return delegate.getReader();
 		}
-		return new BufferedReader(new InputStreamReader(getInputStream()));
+		if (reader == null) {
+			if (loggingServletInputStream != null) {
+				throw new IllegalStateException("getInputStream() has already been called for this request");
+			}
+			Charset charset = getContentCharset();
+			if (charset == null) {
+				throw new UnsupportedEncodingException(delegate.getCharacterEncoding());
+			}
+			readerInputStream = new LoggingServletInputStream(delegate.getInputStream());
+			reader = new BufferedReader(new InputStreamReader(readerInputStream, charset));
+		}
+		return reader;
+	}
+
+	public void bindResponse(ServletResponse response) {
+		this.boundResponse = response;
 	}
 
 	@Override
-	public String getParameter(String name) {
-		if (ArrayUtils.isEmpty(content) || this.parameterMap.isEmpty()) {
-			return super.getParameter(name);
-		}
-		String[] values = this.parameterMap.get(name);
-		if (values != null && values.length > 0) {
-			return values[0];
+	public AsyncContext startAsync() {
+		if (boundResponse == null) {
+			return super.startAsync();
 		}
-		return Arrays.toString(values);
+		return startAsync(this, boundResponse);
 	}
 
 	@Override
-	public Map<String, String[]> getParameterMap() {
-		if (ArrayUtils.isEmpty(content) || this.parameterMap.isEmpty()) {
-			return super.getParameterMap();
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		asyncStarted = true;
+		return super.startAsync(servletRequest, servletResponse);
+	}
+
+	/**
+	 * Returns the captured body, or an empty string when the capture limit is zero and bodies are not logged at all. A
+	 * body spilled to a temporary file is only described, see {@link #getContent(int, Consumer)}.
+	 */
+	public String getContent() {
+		return getContent(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns at most the given number of characters of the captured body with whitespace normalized. Only that many
+	 * characters are decoded, so the cost does not depend on the body size.
+	 */
+	public String getContent(int maxChars) {
+		String description = describeContent();
+		if (description != null) {
+			return description;
 		}
-		return this.parameterMap;
+		if (capture.total() == 0 && isFormPost()) {
+			return CapturedContent.normalize(StringUtils.left(getContentFromParameterMap(getParameterMap()), maxChars));
+		}
+		return CapturedContent.normalize(capture.toString(getContentCharset(), maxChars));
 	}
 
-	@Override
-	public Enumeration<String> getParameterNames() {
-		if (ArrayUtils.isEmpty(content) || this.parameterMap.isEmpty()) {
-			return super.getParameterNames();
+	/**
+	 * Returns a copy of the captured body which can still be decoded after this wrapper is released.
+	 */
+	public CapturedContent getCapturedContent() {
+		String description = describeContent();
+		if (description != null) {
+			return CapturedContent.of(description, false);
+		}
+		if (capture.total() == 0 && isFormPost()) {
+			return CapturedContent.of(getContentFromParameterMap(getParameterMap()), true);
 		}
-		return new ParamNameEnumeration(this.parameterMap.keySet());
+		return capture.snapshot(getContentCharset(), true);
 	}
 
-	@Override
-	public String[] getParameterValues(String name) {
-		if (ArrayUtils.isEmpty(content) || this.parameterMap.isEmpty()) {
-			return super.getParameterValues(name);
+	/**
+	 * Reads what the application left unread and returns the description of a body which is not decoded, or
+	 * {@code null} when the capture is decoded.
+	 */
+	private String describeContent() {
+		if (capture.limit() == 0) {
+			return "";
+		}
+		if (!captured) {
+			return ContentCapture.describeBinary(getContentLengthLong());
+		}
+		if (getContentCharset() == null) {
+			return "[UNSUPPORTED ENCODING]";
 		}
-		return this.parameterMap.get(name);
+		try {
+			drainUnreadContent();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (capture.isLost()) {
+			return ContentCapture.describeLost(capture.total());
+		}
+		if (capture.isSpilled()) {
+			return ContentCapture.describeSpilled(capture.size());
+		}
+		return null;
 	}
 
-	public String getContent() {
+	/**
+	 * Returns whether the captured body outgrew the in-memory threshold and lives in a temporary file.
+	 */
+	public boolean isSpilled() {
+		if (!captured || capture.limit() == 0) {
+			return false;
+		}
 		try {
-			if (this.parameterMap.isEmpty()) {
-				content = IOUtils.toByteArray(delegate.getInputStream());
-			} else {
-				content = getContentFromParameterMap(this.parameterMap);
+			drainUnreadContent();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return capture.isSpilled();
+	}
+
+	/**
+	 * Passes the captured body to the consumer in parts of at most the given number of characters, as is without
+	 * normalizing whitespace.
+	 */
+	public void getContent(int partSize, Consumer<String> consumer) {
+		Charset charset = getContentCharset();
+		if (charset != null && isSpilled()) {
+			capture.decode(charset, partSize, consumer);
+		}
+	}
+
+	private void drainUnreadContent() throws IOException {
+		if (loggingServletInputStream != null || reader != null || asyncStarted) {
+			return;
+		}
+		ServletInputStream inputStream = getInputStream();
+		byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+		boolean whole = digest != null && !isRejected();
+		while (whole || (captured && !capture.isFull())) {
+			int length = whole ? buffer.length : Math.min(buffer.length, capture.limit() - capture.size());
+			if (inputStream.read(buffer, 0, length) == -1) {
+				break;
 			}
+		}
+	}
+
+	/**
+	 * Reads to its end a body the application opened but left partly unread, so the digest covers the whole body. An
+	 * asynchronous request may still be reading on another thread and is left alone.
+	 */
+	private void drainOpenedContent() throws IOException {
+		LoggingServletInputStream inputStream = loggingServletInputStream != null ? loggingServletInputStream : readerInputStream;
+		if (inputStream == null || asyncStarted || isRejected()) {
+			return;
+		}
+		byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+		while (!finished && inputStream.read(buffer) != -1) {
+			// digested by the stream itself
+		}
+	}
+
+	/**
+	 * Returns whether the bound response already rejects the request, a 413 for an oversized upload for example, in
+	 * which case the rest of the body is not worth reading.
+	 */
+	private boolean isRejected() {
+		return boundResponse instanceof HttpServletResponse && ((HttpServletResponse) boundResponse).getStatus() >= MIN_REJECTED_STATUS;
+	}
+
+	private Charset getContentCharset() {
+		try {
 			String requestEncoding = delegate.getCharacterEncoding();
-			String normalizedContent = StringUtils.normalizeSpace(new String(content, requestEncoding != null ? requestEncoding : StandardCharsets.UTF_8.name()));
-			return StringUtils.isBlank(normalizedContent) ? "[EMPTY]" : normalizedContent;
+			return requestEncoding != null ? Charset.forName(requestEncoding) : StandardCharsets.UTF_8;
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Rebuilds a form body the container has already consumed while parsing parameters, so the tee never saw it.
+	 */
+	private static String getContentFromParameterMap(Map<String, String[]> parameterMap) {
+		StringBuilder content = new StringBuilder();
+		for (Entry<String, String[]> parameter : parameterMap.entrySet()) {
+			if (content.length() > 0) {
+				content.append('&');
+			}
+			String[] values = parameter.getValue();
+			content.append(parameter.getKey()).append('=').append(values.length == 1 ? values[0] : Arrays.toString(values));
+		}
+		return content.toString();
+	}
+
+	public void release() {
+		capture.release();
+	}
+
+	public boolean isCaptured() {
+		return captured;
+	}
+
+	public long getBodySize() {
+		if (digest != null) {
+			return digest.getSize();
+		}
+		return captured ? capture.total() : getContentLengthLong();
+	}
+
+	/**
+	 * Returns the digest of the whole body, reading what the application left unread, or {@code null} when no digest is
+	 * computed or the digest would not cover the whole body: the body was not read to its end because the response
+	 * rejects the request or the request went asynchronous, or the container consumed a form body while parsing
+	 * parameters. The body size is exact once the digest is taken.
+	 */
+	public String getBodyHash() {
+		if (digest == null) {
+			return null;
+		}
+		try {
+			drainUnreadContent();
+			drainOpenedContent();
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
+		if (!finished || (digest.getSize() == 0 && getContentLengthLong() != 0 && isFormPost())) {
+			return null;
+		}
+		return digest.getValue();
 	}
 
-	private byte[] getContentFromParameterMap(Map<String, String[]> parameterMap) {
-		return parameterMap.entrySet().stream().map(e -> {
-			String[] value = e.getValue();
-			return e.getKey() + "=" + (value.length == 1 ? value[0] : Arrays.toString(value));
-		}).collect(Collectors.joining("&")).getBytes();
+	public Map<String, List<String>> getHeaders() {
+		return getHeaders(HeaderMatcher.all());
 	}
 
-	public Map<String, String> getHeaders() {
-		Map<String, String> headers = new HashMap<>(0);
+	public Map<String, List<String>> getHeaders(HeaderMatcher headerMatcher) {
+		Map<String, List<String>> headers = new LinkedHashMap<>();
 		Enumeration<String> headerNames = getHeaderNames();
-		while (headerNames.hasMoreElements()) {
+		while (headerNames != null && headerNames.hasMoreElements()) {
 			String headerName = headerNames.nextElement();
-			if (headerName != null) {
-				headers.put(headerName, getHeader(headerName));
+			if (headerMatcher.matches(headerName)) {
+				Enumeration<String> values = getHeaders(headerName);
+				headers.put(headerName, values != null ? Collections.list(values) : Collections.emptyList());
 			}
 		}
 		return headers;
@@ -145,58 +368,67 @@ public class LoggingHttpServletRequestWrapper extends HttpServletRequestWrapper
 		return (contentType != null && contentType.contains(FORM_CONTENT_TYPE) && METHOD_POST.equalsIgnoreCase(getMethod()));
 	}
 
-	@SuppressWarnings({"squid:S1150"})
-	private class ParamNameEnumeration implements Enumeration<String> {
-
-		private final Iterator<String> iterator;
-
-		private ParamNameEnumeration(Set<String> values) {
-			this.iterator = values != null ? values.iterator() : Collections.emptyIterator();
-		}
-
-		@Override
-		public boolean hasMoreElements() {
-			return iterator.hasNext();
-		}
-
-		@Override
-		public String nextElement() {
-			return iterator.next();
-		}
-	}
-
 	private class LoggingServletInputStream extends ServletInputStream {
 
-		private final InputStream is;
+		private final ServletInputStream inputStream;
 
-		private LoggingServletInputStream(byte[] content) {
-			this.is = new ByteArrayInputStream(content);
+		private LoggingServletInputStream(ServletInputStream inputStream) {
+			this.inputStream = inputStream;
 		}
 
 		@Override
 		public boolean isFinished() {
-			return true;
+			if (inputStream.isFinished()) {
+				finished = true;
+			}
+			return finished;
 		}
 
 		@Override
 		public boolean isReady() {
-			return true;
+			return inputStream.isReady();
 		}
 
 		@Override
 		public void setReadListener(ReadListener readListener) {
-			// not used
+			inputStream.setReadListener(readListener);
 		}
 
 		@Override
 		public int read() throws IOException {
-			return this.is.read();
+			int b = inputStream.read();
+			if (b == -1) {
+				finished = true;
+			} else {
+				if (captured) {
+					capture.write(b);
+				}
+				if (digest != null) {
+					digest.update(b);
+				}
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = inputStream.read(b, off, len);
+			if (read == -1) {
+				finished = true;
+			} else if (read > 0) {
+				if (captured) {
+					capture.write(b, off, read);
+				}
+				if (digest != null) {
+					digest.update(b, off, read);
+				}
+			}
+			return read;
 		}
 
 		@Override
 		public void close() throws IOException {
-			super.close();
-			is.close();
+			inputStream.close();
 		}
 	}
 }
@@ -2,86 +2,357 @@ package javax.servlet.filter.logging.wrapper;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
+import javax.servlet.filter.logging.digest.BodyDigest;
+import javax.servlet.filter.logging.matcher.ContentTypeMatcher;
+import javax.servlet.filter.logging.matcher.HeaderMatcher;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class LoggingHttpServletResponseWrapper extends HttpServletResponseWrapper {
 
-	private final LoggingServletOutpuStream loggingServletOutpuStream = new LoggingServletOutpuStream();
+	private static final String CONTENT_ENCODING = "Content-Encoding";
+
+	private static final String CONTENT_LENGTH = "Content-Length";
+
+	private final ContentCapture capture;
 
 	private final HttpServletResponse delegate;
 
+	private final ContentTypeMatcher capturedContentTypes;
+
+	private final Supplier<BodyDigest> bodyDigest;
+
+	private BodyDigest digest;
+
+	private boolean contentTypeChecked;
+
+	private boolean captured = true;
+
+	private ContentInflater inflater;
+
+	private LoggingServletOutpuStream loggingServletOutpuStream;
+
+	private PrintWriter writer;
+
 	public LoggingHttpServletResponseWrapper(HttpServletResponse response) {
+		this(response, Integer.MAX_VALUE);
+	}
+
+	public LoggingHttpServletResponseWrapper(HttpServletResponse response, int maxContentSize) {
+		this(response, maxContentSize, null);
+	}
+
+	public LoggingHttpServletResponseWrapper(HttpServletResponse response, int maxContentSize, CaptureBufferPool bufferPool) {
+		this(response, maxContentSize, bufferPool, null);
+	}
+
+	public LoggingHttpServletResponseWrapper(HttpServletResponse response, int maxContentSize, CaptureBufferPool bufferPool,
+			ContentTypeMatcher capturedContentTypes) {
+		this(response, maxContentSize, bufferPool, capturedContentTypes, SpillPolicy.none());
+	}
+
+	public LoggingHttpServletResponseWrapper(HttpServletResponse response, int maxContentSize, CaptureBufferPool bufferPool,
+			ContentTypeMatcher capturedContentTypes, SpillPolicy spillPolicy) {
+		this(response, maxContentSize, bufferPool, capturedContentTypes, spillPolicy, null);
+	}
+
+	/**
+	 * @param bodyDigest factory of the digest computed over the whole body as written, encoded or not, and whether it
+	 *                   is captured or not, {@code null} computes none
+	 */
+	public LoggingHttpServletResponseWrapper(HttpServletResponse response, int maxContentSize, CaptureBufferPool bufferPool,
+			ContentTypeMatcher capturedContentTypes, SpillPolicy spillPolicy, Supplier<BodyDigest> bodyDigest) {
 		super(response);
 		delegate = response;
+		capture = new ContentCapture(maxContentSize, bufferPool, spillPolicy);
+		this.capturedContentTypes = capturedContentTypes;
+		this.bodyDigest = bodyDigest;
+		this.digest = bodyDigest != null ? bodyDigest.get() : null;
 	}
 
 	@Override
-	public ServletOutputStream getOutputStream() {
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (writer != null) {
+			throw new IllegalStateException("getWriter() has already been called for this response");
+		}
+		if (loggingServletOutpuStream == null) {
+			loggingServletOutpuStream = new LoggingServletOutpuStream(delegate.getOutputStream());
+		}
 		return loggingServletOutpuStream;
 	}
 
 	@Override
-	public PrintWriter getWriter() {
-		return new PrintWriter(loggingServletOutpuStream.baos);
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			if (loggingServletOutpuStream != null) {
+				throw new IllegalStateException("getOutputStream() has already been called for this response");
+			}
+			ServletOutputStream outputStream = new LoggingServletOutpuStream(delegate.getOutputStream());
+			writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+		}
+		return writer;
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+		super.flushBuffer();
+	}
+
+	@Override
+	public void resetBuffer() {
+		super.resetBuffer();
+		resetCapture();
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		resetCapture();
 	}
 
-	public Map<String, String> getHeaders() {
-		Map<String, String> headers = new HashMap<>(0);
+	public void release() {
+		if (inflater != null) {
+			inflater.end();
+		}
+		capture.release();
+	}
+
+	public long getBodySize() {
+		if (digest != null) {
+			return digest.getSize();
+		}
+		return inflater != null ? inflater.total() : capture.total();
+	}
+
+	/**
+	 * Returns the digest of the whole body written so far, or {@code null} when no digest is computed.
+	 */
+	public String getBodyHash() {
+		if (digest == null) {
+			return null;
+		}
+		if (writer != null) {
+			writer.flush();
+		}
+		return digest.getValue();
+	}
+
+	public Map<String, List<String>> getHeaders() {
+		return getHeaders(HeaderMatcher.all());
+	}
+
+	public Map<String, List<String>> getHeaders(HeaderMatcher headerMatcher) {
+		Map<String, List<String>> headers = new LinkedHashMap<>();
 		for (String headerName : getHeaderNames()) {
-			headers.put(headerName, getHeader(headerName));
+			if (headerMatcher.matches(headerName)) {
+				headers.put(headerName, new ArrayList<>(getHeaders(headerName)));
+			}
 		}
 		return headers;
 	}
 
+	public boolean isCaptured() {
+		return captured;
+	}
+
 	public String getContent() {
+		return getContent(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns at most the given number of characters of the captured body. Only that many characters are decoded.
+	 */
+	public String getContent(int maxChars) {
+		String description = describeContent();
+		return description != null ? description : capture.toString(getContentCharset(), maxChars);
+	}
+
+	/**
+	 * Returns a copy of the captured body which can still be decoded after this wrapper is released.
+	 */
+	public CapturedContent getCapturedContent() {
+		String description = describeContent();
+		return description != null ? CapturedContent.of(description, false) : capture.snapshot(getContentCharset(), false);
+	}
+
+	/**
+	 * Returns the description of a body which is not decoded, or {@code null} when the capture is decoded.
+	 */
+	private String describeContent() {
+		if (writer != null) {
+			writer.flush();
+		}
+		if (capture.limit() == 0) {
+			return "";
+		}
+		if (!captured) {
+			return ContentCapture.describeBinary(capture.total());
+		}
+		if (getContentCharset() == null) {
+			return "[UNSUPPORTED ENCODING]";
+		}
+		if (inflater != null && inflater.isCorrupted()) {
+			return "[CORRUPTED " + inflater.getEncoding() + "]";
+		}
+		if (capture.isLost()) {
+			return ContentCapture.describeLost(capture.total());
+		}
+		if (capture.isSpilled()) {
+			return ContentCapture.describeSpilled(capture.size());
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the captured body outgrew the in-memory threshold and lives in a temporary file.
+	 */
+	public boolean isSpilled() {
+		if (writer != null) {
+			writer.flush();
+		}
+		return captured && capture.isSpilled();
+	}
+
+	/**
+	 * Passes the captured body to the consumer in parts of at most the given number of characters.
+	 */
+	public void getContent(int partSize, Consumer<String> consumer) {
+		Charset charset = getContentCharset();
+		if (charset != null && isSpilled() && (inflater == null || !inflater.isCorrupted())) {
+			capture.decode(charset, partSize, consumer);
+		}
+	}
+
+	private Charset getContentCharset() {
 		try {
 			String responseEncoding = delegate.getCharacterEncoding();
-			return loggingServletOutpuStream.baos.toString(responseEncoding != null ? responseEncoding : UTF_8.name());
-		} catch (UnsupportedEncodingException e) {
-			return "[UNSUPPORTED ENCODING]";
+			return responseEncoding != null ? Charset.forName(responseEncoding) : UTF_8;
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			return null;
 		}
 	}
 
 	public byte[] getContentAsBytes() {
-		return loggingServletOutpuStream.baos.toByteArray();
+		if (writer != null) {
+			writer.flush();
+		}
+		return capture.toByteArray();
+	}
+
+	private void resetCapture() {
+		capture.reset();
+		if (digest != null) {
+			digest = bodyDigest.get();
+		}
+		if (inflater != null) {
+			inflater.end();
+			inflater = null;
+			contentTypeChecked = false;
+		}
+	}
+
+	private void checkContentType() {
+		contentTypeChecked = true;
+		if (capturedContentTypes != null && !capturedContentTypes.matches(delegate.getContentType(), getDeclaredContentLength())) {
+			captured = false;
+			capture.release();
+			return;
+		}
+		String contentEncoding = delegate.getHeader(CONTENT_ENCODING);
+		if (ContentInflater.isSupported(contentEncoding)) {
+			inflater = new ContentInflater(contentEncoding, capture);
+		}
+	}
+
+	private long getDeclaredContentLength() {
+		String contentLength = delegate.getHeader(CONTENT_LENGTH);
+		try {
+			return contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 
 	private class LoggingServletOutpuStream extends ServletOutputStream {
 
-		private ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		private final ServletOutputStream outputStream;
+
+		private LoggingServletOutpuStream(ServletOutputStream outputStream) {
+			this.outputStream = outputStream;
+		}
 
 		@Override
 		public boolean isReady() {
-			return true;
+			return outputStream.isReady();
 		}
 
 		@Override
 		public void setWriteListener(WriteListener writeListener) {
-			// not used
+			outputStream.setWriteListener(writeListener);
 		}
 
 		@Override
-		public void write(int b) {
-			baos.write(b);
+		public void write(int b) throws IOException {
+			outputStream.write(b);
+			if (digest != null) {
+				digest.update(b);
+			}
+			if (!contentTypeChecked) {
+				checkContentType();
+			}
+			if (inflater != null) {
+				inflater.write(b);
+			} else {
+				capture.write(b);
+			}
 		}
 
 		@Override
 		public void write(byte[] b) throws IOException {
-			baos.write(b);
+			write(b, 0, b.length);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			outputStream.write(b, off, len);
+			if (digest != null) {
+				digest.update(b, off, len);
+			}
+			if (!contentTypeChecked) {
+				checkContentType();
+			}
+			if (inflater != null) {
+				inflater.write(b, off, len);
+			} else {
+				capture.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			outputStream.flush();
 		}
 
 		@Override
-		public void write(byte[] b, int off, int len) {
-			baos.write(b, off, len);
+		public void close() throws IOException {
+			outputStream.close();
 		}
 	}
 }
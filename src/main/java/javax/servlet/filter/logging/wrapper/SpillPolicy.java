@@ -0,0 +1,55 @@
+package javax.servlet.filter.logging.wrapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * When a capture moves from heap to a temporary file. Only captures whose limit exceeds the threshold spill, so the
+ * policy only kicks in for large limits such as the unlimited capture of TRACE logging.
+ */
+public final class SpillPolicy {
+
+	private static final SpillPolicy NONE = new SpillPolicy(0, null);
+
+	private static final String FILE_PREFIX = "logging-filter-";
+
+	private static final String FILE_SUFFIX = ".body";
+
+	private final int threshold;
+
+	private final Path directory;
+
+	private SpillPolicy(int threshold, Path directory) {
+		this.threshold = threshold;
+		this.directory = directory;
+	}
+
+	public static SpillPolicy none() {
+		return NONE;
+	}
+
+	/**
+	 * Spills captures past the given number of bytes into files in the directory, or the default temporary directory
+	 * when it is {@code null}. A threshold of zero or less disables spilling.
+	 */
+	public static SpillPolicy of(int threshold, Path directory) {
+		return threshold > 0 ? new SpillPolicy(threshold, directory) : NONE;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	boolean shouldSpill(int limit, long size) {
+		return threshold > 0 && limit > threshold && size > threshold;
+	}
+
+	Path createFile() throws IOException {
+		return directory != null ? Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX) : Files.createTempFile(FILE_PREFIX, FILE_SUFFIX);
+	}
+}
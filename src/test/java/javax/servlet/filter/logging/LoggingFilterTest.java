@@ -1,27 +1,71 @@
 package javax.servlet.filter.logging;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
+import org.slf4j.Marker;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockFilterConfig;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.context.support.HttpRequestHandlerServlet;
 
+import javax.management.ObjectName;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.filter.logging.async.AsyncLogDispatcher;
+import javax.servlet.filter.logging.entity.LoggingRequest;
+import javax.servlet.filter.logging.governor.CaptureLevel;
+import javax.servlet.filter.logging.metrics.FilterMetrics;
+import javax.servlet.filter.logging.metrics.RouteStatistics;
+import javax.servlet.filter.logging.wrapper.LoggingHttpServletRequestWrapper;
+import javax.servlet.filter.logging.wrapper.LoggingHttpServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.AdditionalMatchers.and;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.slf4j.MarkerFactory.getMarker;
@@ -105,6 +149,882 @@ class LoggingFilterTest {
         verify(logger).debug("{\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"Test response body\"}");
     }
 
+    @Test
+    void testDoFilter_ResponseStreamedAndTruncated() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("maxContentSize", "4");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"Test\"}");
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Test response body");
+    }
+
+    @Test
+    void testDoFilter_RequestCapturedWhileRead() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("maxContentSize", "4");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        FilterChain echoChain = (request, response) -> IOUtils.copy(request.getInputStream(), response.getOutputStream());
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, echoChain);
+
+        verify(logger).debug(getMarker("REQUEST"), "REQUEST: {\"sender\":\"127.0.0.1\",\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"params\":{\"param1\":\"1000\"},\"headers\":{\"Accept\":\"application/json\",\"Content-Type\":\"text/plain\"},\"body\":\"Test\"}");
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Test request body");
+    }
+
+    @Test
+    void testDoFilter_Async() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("asyncQueueSize", "16");
+        filterConfig.addInitParameter("asyncOverflowPolicy", "block");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+        assertThat(loggingFilter.getAsyncLogDispatcher().getEnqueuedCount()).isEqualTo(1);
+        loggingFilter.destroy();
+
+        verify(logger).debug(getMarker("REQUEST"), "REQUEST: {\"sender\":\"127.0.0.1\",\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"params\":{\"param1\":\"1000\"},\"headers\":{\"Accept\":\"application/json\",\"Content-Type\":\"text/plain\"},\"body\":\"Test request body\"}");
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"Test response body\"}");
+    }
+
+    @Test
+    void testDoFilter_AsyncBodiesDropped() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("asyncQueueSize", "1");
+        filterConfig.addInitParameter("asyncOverflowPolicy", "drop_body");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+        assertThat(loggingFilter.getAsyncLogDispatcher().getDroppedBodyCount()).isEqualTo(1);
+        loggingFilter.destroy();
+
+        verify(logger).debug(getMarker("REQUEST"), "REQUEST: {\"sender\":\"127.0.0.1\",\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"params\":{\"param1\":\"1000\"},\"headers\":{\"Accept\":\"application/json\",\"Content-Type\":\"text/plain\"},\"body\":\"[DROPPED]\"}");
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"[DROPPED]\"}");
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Test response body");
+    }
+
+    @Test
+    void testDoFilter_AsyncBodiesDroppedWithFlightRecorder() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("asyncQueueSize", "1");
+        filterConfig.addInitParameter("asyncOverflowPolicy", "drop_body");
+        filterConfig.addInitParameter("flightRecorderSize", "1");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+        assertThat(loggingFilter.getAsyncLogDispatcher().getDroppedBodyCount()).isEqualTo(1);
+        String dump = loggingFilter.dumpFlightRecorder();
+        loggingFilter.destroy();
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith(",\"body\":\"[DROPPED]\"}"));
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"[DROPPED]\"}");
+        assertThat(dump).contains("\"body\":\"Test request body\"").contains("\"body\":\"Test response body\"");
+    }
+
+    @Test
+    void testDoFilter_OverriddenDescriptions() throws Exception {
+
+        LoggingFilter customFilter = new LoggingFilter() {
+            @Override
+            protected String getResponseDescription(LoggingHttpServletResponseWrapper responseWrapper) {
+                return "status " + responseWrapper.getStatus();
+            }
+
+            @Override
+            protected LoggingRequest createLoggingRequest(LoggingHttpServletRequestWrapper requestWrapper) {
+                LoggingRequest loggingRequest = super.createLoggingRequest(requestWrapper);
+                loggingRequest.setHeaders(null);
+                return loggingRequest;
+            }
+        };
+        ReflectionTestUtils.setField(customFilter, "log", logger);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        customFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(getMarker("REQUEST"), "REQUEST: {\"sender\":\"127.0.0.1\",\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"params\":{\"param1\":\"1000\"},\"body\":\"Test request body\"}");
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: status 200");
+    }
+
+    @Test
+    void testInit_WarnsAboutWrapperDescriptionsWithAsyncLogging() throws Exception {
+
+        LoggingFilter customFilter = new LoggingFilter() {
+            @Override
+            protected String getResponseDescription(LoggingHttpServletResponseWrapper responseWrapper) {
+                return "status " + responseWrapper.getStatus();
+            }
+        };
+        ReflectionTestUtils.setField(customFilter, "log", logger);
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("asyncQueueSize", "1");
+
+        customFilter.init(filterConfig);
+        customFilter.destroy();
+
+        verify(logger).warn(startsWith("Overridden descriptions of the wrappers are not used"));
+    }
+
+    @Test
+    void testDoFilter_AsyncRequestLoggedOnComplete() throws Exception {
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        httpServletRequest.setAsyncSupported(true);
+        FilterChain asyncChain = (request, response) -> request.startAsync();
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, asyncChain);
+
+        verify(logger, never()).debug(any(Marker.class), anyString());
+
+        AsyncContext asyncContext = httpServletRequest.getAsyncContext();
+        asyncContext.getResponse().getOutputStream().write("Test async body".getBytes());
+        asyncContext.complete();
+
+        verify(logger).debug(getMarker("REQUEST"), "REQUEST: {\"sender\":\"127.0.0.1\",\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"params\":{\"param1\":\"1000\"},\"headers\":{\"Accept\":\"application/json\",\"Content-Type\":\"text/plain\"},\"body\":\"[EMPTY]\"}");
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"Test async body\"}");
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Test async body");
+    }
+
+    @Test
+    void testDoFilter_ExcludedPath() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("includedPaths", "/api/*, /test");
+        filterConfig.addInitParameter("excludedPaths", "*.css");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        httpServletRequest.setRequestURI("/test/main.css");
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger, never()).debug(any(Marker.class), anyString());
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Test response body");
+    }
+
+    @Test
+    void testDoFilter_RouteSampleLimit() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("sampleRouteLimits", "/test=1");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        httpServletRequest.setRequestURI("/test");
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+        loggingFilter.doFilter(httpServletRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+        verify(logger, times(1)).debug(eq(getMarker("RESPONSE")), anyString());
+    }
+
+    @Test
+    void testDoFilter_TailRetentionSummary() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("tailRetention", "true");
+        filterConfig.addInitParameter("tailSlowThreshold", "60000");
+        filterConfig.addInitParameter("tailSummary", "true");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger, never()).debug(eq(getMarker("REQUEST")), anyString());
+        verify(logger).debug(eq(getMarker("RESPONSE")), startsWith("RESPONSE: {\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"status\":200,\"duration\":"));
+    }
+
+    @Test
+    void testDoFilter_TailRetentionFailure() {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("tailRetention", "true");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        FilterChain failingChain = (request, response) -> {
+            response.getOutputStream().write("Partial".getBytes());
+            throw new ServletException("failed");
+        };
+        assertThatThrownBy(() -> loggingFilter.doFilter(httpServletRequest, httpServletResponse, failingChain)).isInstanceOf(ServletException.class);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), anyString());
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"Partial\"}");
+    }
+
+    @Test
+    void testDoFilter_Metrics() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig("metricsTest");
+        filterConfig.addInitParameter("metrics", "true");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        List<RouteStatistics> routes = loggingFilter.getMetrics().getRoutes();
+        assertThat(routes).hasSize(1);
+        assertThat(routes.get(0).getStatusClass()).isEqualTo("2xx");
+        assertThat(routes.get(0).getCount()).isEqualTo(1);
+        assertThat(routes.get(0).getResponseBytes()).isEqualTo(18);
+        assertThat(loggingFilter.getMetrics().getOverheadCount()).isEqualTo(1);
+
+        ObjectName objectName = new ObjectName(FilterMetrics.DOMAIN + ":type=LoggingFilter,name=\"metricsTest\"");
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isTrue();
+        loggingFilter.destroy();
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+    }
+
+    @Test
+    void testDoFilter_MetricsOfSkippedAsyncRequestRecordedOnComplete() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig("asyncMetricsTest");
+        filterConfig.addInitParameter("metrics", "true");
+        loggingFilter.init(filterConfig);
+
+        httpServletRequest.setAsyncSupported(true);
+        FilterChain asyncChain = (request, response) -> request.startAsync();
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, asyncChain);
+
+        assertThat(loggingFilter.getMetrics().getRoutes()).isEmpty();
+
+        httpServletResponse.setStatus(503);
+        httpServletRequest.getAsyncContext().complete();
+
+        List<RouteStatistics> routes = loggingFilter.getMetrics().getRoutes();
+        assertThat(routes).hasSize(1);
+        assertThat(routes.get(0).getStatusClass()).isEqualTo("5xx");
+        loggingFilter.destroy();
+    }
+
+    @Test
+    void testInit_ResourceParametersTrimmedAndReplaced() {
+
+        MockFilterConfig filterConfig = new MockFilterConfig("resourcesTest");
+        filterConfig.addInitParameter("asyncQueueSize", " 8 ");
+        filterConfig.addInitParameter("asyncWorkers", " 2 ");
+        filterConfig.addInitParameter("asyncOverflowPolicy", " block ");
+        filterConfig.addInitParameter("flightRecorderSize", " 4 ");
+        loggingFilter.init(filterConfig);
+
+        AsyncLogDispatcher dispatcher = loggingFilter.getAsyncLogDispatcher();
+        assertThat(dispatcher.getQueueCapacity()).isEqualTo(8);
+        assertThat(loggingFilter.getFlightRecorder().getSize()).isEqualTo(4);
+
+        MockFilterConfig disabled = new MockFilterConfig("resourcesTest");
+        disabled.addInitParameter("asyncQueueSize", "0");
+        disabled.addInitParameter("flightRecorderSize", "0");
+        loggingFilter.init(disabled);
+
+        assertThat(loggingFilter.getAsyncLogDispatcher()).isNull();
+        assertThat(loggingFilter.getFlightRecorder()).isNull();
+        loggingFilter.destroy();
+    }
+
+    @Test
+    void testDoFilter_BufferPool() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("bufferPoolSize", "4");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+        loggingFilter.doFilter(httpServletRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+        assertThat(loggingFilter.getBufferPool().getMissCount()).isEqualTo(2);
+        assertThat(loggingFilter.getBufferPool().getHitCount()).isEqualTo(1);
+        assertThat(loggingFilter.getBufferPool().getAvailableCount()).isEqualTo(2);
+        verify(logger, times(2)).debug(eq(getMarker("RESPONSE")), endsWith("\"body\":\"Test response body\"}"));
+    }
+
+    @Test
+    void testDoFilter_WriteAfterAsyncTimeoutLeavesPooledBufferAlone() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("bufferPoolSize", "1");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        httpServletRequest.setAsyncSupported(true);
+        FilterChain asyncChain = (request, response) -> {
+            request.startAsync();
+            response.getOutputStream().write("Before timeout".getBytes());
+        };
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, asyncChain);
+        MockAsyncContext asyncContext = (MockAsyncContext) httpServletRequest.getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+        asyncContext.getResponse().getOutputStream().write(" after timeout".getBytes());
+
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest("GET", "/next");
+        loggingFilter.doFilter(nextRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+        verify(logger).debug(eq(getMarker("RESPONSE")), endsWith("\"body\":\"Before timeout\"}"));
+        verify(logger).debug(eq(getMarker("RESPONSE")), endsWith("\"body\":\"Test response body\"}"));
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Before timeout after timeout");
+        assertThat(loggingFilter.getBufferPool().getAvailableCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testDoFilter_BinaryBodies() throws Exception {
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        httpServletRequest.setMethod("POST");
+        httpServletRequest.setContentType("application/octet-stream");
+        FilterChain binaryChain = (request, response) -> {
+            response.setContentType("image/png");
+            response.getOutputStream().write(new byte[]{1, 2, 3, 4});
+        };
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, binaryChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith("\"body\":\"[BINARY 17 bytes]\"}"));
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"image/png\"},\"body\":\"[BINARY 4 bytes]\"}");
+        assertThat(httpServletResponse.getContentAsByteArray()).containsExactly(1, 2, 3, 4);
+    }
+
+    @Test
+    void testDoFilter_BodiesOverDeclaredLengthNotCaptured() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("maxCapturedContentLength", "10");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        FilterChain lengthChain = (request, response) -> {
+            response.setContentLength(18);
+            response.getOutputStream().write("Test response body".getBytes());
+        };
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, lengthChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith("\"body\":\"[BINARY 17 bytes]\"}"));
+        verify(logger).debug(eq(getMarker("RESPONSE")), endsWith("\"body\":\"[BINARY 18 bytes]\"}"));
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Test response body");
+    }
+
+    @Test
+    void testDoFilter_GzipResponseInflated() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("maxContentSize", "30");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            for (int i = 0; i < 1000; i++) {
+                gzip.write(("Test response body " + i + " ").getBytes());
+            }
+        }
+        FilterChain gzipChain = (request, response) -> {
+            ((HttpServletResponse) response).setHeader("Content-Encoding", "gzip");
+            response.setContentType("text/plain");
+            byte[] body = compressed.toByteArray();
+            for (int i = 0; i < body.length; i += 7) {
+                response.getOutputStream().write(body, i, Math.min(7, body.length - i));
+            }
+        };
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, gzipChain);
+
+        verify(logger).debug(eq(getMarker("RESPONSE")), endsWith("\"body\":\"Test response body 0 Test resp\"}"));
+        assertThat(httpServletResponse.getContentAsByteArray()).isEqualTo(compressed.toByteArray());
+    }
+
+    @Test
+    void testDoFilter_DeflateResponseInflated() throws Exception {
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed)) {
+            deflate.write("Test response body".getBytes());
+        }
+        FilterChain deflateChain = (request, response) -> {
+            ((HttpServletResponse) response).setHeader("Content-Encoding", "deflate");
+            response.getOutputStream().write(compressed.toByteArray());
+        };
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, deflateChain);
+
+        verify(logger).debug(eq(getMarker("RESPONSE")), endsWith("\"body\":\"Test response body\"}"));
+    }
+
+    @Test
+    void testDoFilter_Redaction() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("redactedJsonFields", "password");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        httpServletRequest.setMethod("POST");
+        httpServletRequest.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        httpServletRequest.setContent("{\"user\":\"joe\",\"password\":\"secret\"}".getBytes());
+        httpServletRequest.addHeader("Authorization", "Bearer token");
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith("\"Authorization\":\"[REDACTED]\"},\"body\":\"{\\\"user\\\":\\\"joe\\\",\\\"password\\\":\\\"[REDACTED]\\\"}\"}"));
+    }
+
+    @Test
+    void testDoFilter_MultiValuedHeaders() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("excludedHeaders", "x-internal");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        httpServletRequest.addHeader("X-Forwarded-For", "10.0.0.1");
+        httpServletRequest.addHeader("X-Forwarded-For", "10.0.0.2");
+        httpServletRequest.addHeader("X-Internal", "hidden");
+        FilterChain headerChain = (request, response) -> {
+            ((HttpServletResponse) response).addHeader("Via", "proxy1");
+            ((HttpServletResponse) response).addHeader("Via", "proxy2");
+            ((HttpServletResponse) response).addHeader("X-Internal", "hidden");
+        };
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, headerChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), contains("\"X-Forwarded-For\":[\"10.0.0.1\",\"10.0.0.2\"]}"));
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\",\"Via\":[\"proxy1\",\"proxy2\"]}}");
+    }
+
+    @Test
+    void testDoFilter_FormBodyCapturedRaw() throws Exception {
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        MockHttpServletRequest formRequest = spy(new MockHttpServletRequest("POST", "/form"));
+        formRequest.setContentType(MediaType.APPLICATION_FORM_URLENCODED_VALUE);
+        formRequest.setContent("name=J%C3%B6rg&tags=a&tags=b".getBytes());
+        FilterChain formChain = (request, response) -> verify(formRequest, never()).getParameterMap();
+        loggingFilter.doFilter(formRequest, httpServletResponse, formChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith("\"body\":\"name=J%C3%B6rg&tags=a&tags=b\"}"));
+
+        MockHttpServletRequest parsedRequest = new MockHttpServletRequest("POST", "/parsed");
+        parsedRequest.setContentType(MediaType.APPLICATION_FORM_URLENCODED_VALUE);
+        parsedRequest.addParameter("name", "Jörg");
+        loggingFilter.doFilter(parsedRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith("\"body\":\"name=Jörg\"}"));
+    }
+
+    @Test
+    void testDoFilter_CaptureLevelChangedAtRuntime() throws Exception {
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.setParameter("captureLevel", "headers");
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(getMarker("REQUEST"), "REQUEST: {\"sender\":\"127.0.0.1\",\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"params\":{\"param1\":\"1000\"},\"headers\":{\"Accept\":\"application/json\",\"Content-Type\":\"text/plain\"}}");
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"}}");
+
+        loggingFilter.setParameter("captureLevel", "SUMMARY");
+        loggingFilter.doFilter(httpServletRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+        verify(logger).debug(eq(getMarker("RESPONSE")), startsWith("RESPONSE: {\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"status\":200,\"duration\":"));
+
+        loggingFilter.setParameter("captureLevel", "OFF");
+        loggingFilter.doFilter(httpServletRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+        verify(logger, times(1)).debug(eq(getMarker("REQUEST")), anyString());
+        verify(logger, times(2)).debug(eq(getMarker("RESPONSE")), anyString());
+        assertThat(loggingFilter.getParameters()).containsEntry("captureLevel", "OFF");
+        assertThatThrownBy(() -> loggingFilter.setParameter("asyncQueueSize", "10")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> loggingFilter.setParameter("maxContentSize", "many")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(loggingFilter.getCaptureLevel()).isEqualTo(CaptureLevel.OFF);
+
+        loggingFilter.resetParameters();
+
+        assertThat(loggingFilter.getCaptureLevel()).isEqualTo(CaptureLevel.FULL);
+    }
+
+    @Test
+    void testDoFilter_ConfigFileReloaded(@TempDir Path directory) throws Exception {
+
+        Path configFile = directory.resolve("logging.properties");
+        Files.write(configFile, "maxContentSize=4\n".getBytes());
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("configFile", configFile.toString());
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        try {
+            loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+            verify(logger).debug(eq(getMarker("REQUEST")), endsWith("\"body\":\"Test\"}"));
+
+            Files.write(configFile, "maxContentSize=2\ntailRetention=true\n".getBytes());
+            loggingFilter.reloadConfigFile();
+            loggingFilter.doFilter(httpServletRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+            verify(logger, times(1)).debug(eq(getMarker("REQUEST")), anyString());
+            verify(logger).debug(eq(getMarker("RESPONSE")), contains("\"duration\":"));
+            assertThat(loggingFilter.getParameters()).containsOnlyKeys("maxContentSize", "tailRetention");
+        } finally {
+            loggingFilter.destroy();
+        }
+    }
+
+    @Test
+    void testDoFilter_AggregatedPaths() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("aggregatedPaths", "/health");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                MockHttpServletRequest healthRequest = new MockHttpServletRequest("GET", "/health/live");
+                loggingFilter.doFilter(healthRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+            }
+            loggingFilter.getAggregator().flush();
+
+            verify(logger, never()).debug(eq(getMarker("REQUEST")), anyString());
+            verify(logger).debug(eq(getMarker("RESPONSE")), startsWith("RESPONSE: {\"method\":\"GET\",\"route\":\"/health\",\"status\":200,\"count\":3,\"errors\":0,\"minDuration\":"));
+        } finally {
+            loggingFilter.destroy();
+        }
+    }
+
+    @Test
+    void testDoFilter_CombinedExchange() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("combinedExchange", "true");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        httpServletRequest.addHeader("X-Request-ID", "abc-123");
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(eq(getMarker("EXCHANGE")), startsWith("EXCHANGE: {\"id\":\"abc-123\",\"duration\":"));
+        verify(logger).debug(eq(getMarker("EXCHANGE")), endsWith(",\"request\":{\"sender\":\"127.0.0.1\",\"method\":\"GET\",\"path\":\"http://localhost:8080/test\",\"params\":{\"param1\":\"1000\"},\"headers\":{\"Accept\":\"application/json\",\"Content-Type\":\"text/plain\",\"X-Request-ID\":\"abc-123\"},\"body\":\"Test request body\"},\"response\":{\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"Test response body\"}}"));
+        verify(logger, never()).debug(eq(getMarker("REQUEST")), anyString());
+    }
+
+    @Test
+    void testDoFilter_CombinedExchangeWithOverriddenDescriptions() throws Exception {
+
+        LoggingFilter customFilter = new LoggingFilter(LoggingFilter.Builder.create().combinedExchange(true)) {
+            @Override
+            protected String getResponseDescription(LoggingHttpServletResponseWrapper responseWrapper) {
+                return "status " + responseWrapper.getStatus();
+            }
+        };
+        ReflectionTestUtils.setField(customFilter, "log", logger);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        customFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(eq(getMarker("EXCHANGE")), matches("EXCHANGE: \\{\"id\":\"[0-9a-z]+-1\",\"duration\":\\d+,\"request\":\\{\"sender\":.*\"body\":\"Test request body\"},\"response\":\"status 200\"}"));
+    }
+
+    @Test
+    void testDoFilter_CombinedExchangeWithMalformedJsonDescription() throws Exception {
+
+        LoggingFilter customFilter = new LoggingFilter(LoggingFilter.Builder.create().combinedExchange(true)) {
+            @Override
+            protected String getResponseDescription(LoggingHttpServletResponseWrapper responseWrapper) {
+                return "{status: " + responseWrapper.getStatus() + "} {\"x\":1}";
+            }
+        };
+        ReflectionTestUtils.setField(customFilter, "log", logger);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        customFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(eq(getMarker("EXCHANGE")), endsWith(",\"response\":\"{status: 200} {\\\"x\\\":1}\"}"));
+    }
+
+    @Test
+    void testDoFilter_AsyncSpilledBodiesLoggedBeforeParts(@TempDir Path directory) throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("spillThreshold", "8");
+        filterConfig.addInitParameter("spillDirectory", directory.toString());
+        filterConfig.addInitParameter("asyncQueueSize", "1");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        httpServletRequest.addHeader("X-Request-ID", "abc-123");
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        InOrder inOrder = inOrder(logger);
+        inOrder.verify(logger).debug(eq(getMarker("REQUEST")), endsWith(",\"body\":\"[SPILLED 17 bytes]\"}"));
+        inOrder.verify(logger).debug(eq(getMarker("RESPONSE")), endsWith(",\"body\":\"[SPILLED 18 bytes]\"}"));
+        inOrder.verify(logger).debug(getMarker("REQUEST"), "REQUEST: {\"id\":\"abc-123\",\"part\":1,\"body\":\"Test request body\"}");
+        inOrder.verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"id\":\"abc-123\",\"part\":1,\"body\":\"Test response body\"}");
+        loggingFilter.destroy();
+    }
+
+    @Test
+    void testDoFilter_SpilledBodiesLoggedInParts(@TempDir Path directory) throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("spillThreshold", "8");
+        filterConfig.addInitParameter("spillDirectory", directory.toString());
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        httpServletRequest.addHeader("X-Request-ID", "abc-123");
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), and(startsWith("REQUEST: {\"id\":\"abc-123\",\"sender\""), endsWith(",\"body\":\"[SPILLED 17 bytes]\"}")));
+        verify(logger).debug(getMarker("REQUEST"), "REQUEST: {\"id\":\"abc-123\",\"part\":1,\"body\":\"Test request body\"}");
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"id\":\"abc-123\",\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"[SPILLED 18 bytes]\"}");
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"id\":\"abc-123\",\"part\":1,\"body\":\"Test response body\"}");
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Test response body");
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void testDoFilter_FlightRecorderDumpedOnErrorBurst() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("flightRecorderSize", "2");
+        filterConfig.addInitParameter("flightRecorderErrorBurst", "2");
+        filterConfig.addInitParameter("tailRetention", "true");
+        filterConfig.addInitParameter("tailSummary", "false");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse errorResponse = new MockHttpServletResponse();
+            errorResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            loggingFilter.doFilter(httpServletRequest, errorResponse, new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+        }
+
+        verify(logger).warn(eq(getMarker("FLIGHT_RECORDER")), matches("FLIGHT_RECORDER: \\[\\{\"id\":\"[0-9a-z]+-2\".*\"status\":500.*},\\{\"id\":\"[0-9a-z]+-3\".*\"status\":500.*}]"));
+        verify(logger, times(2)).debug(eq(getMarker("RESPONSE")), contains("\"status\":500"));
+        verify(logger, never()).debug(eq(getMarker("RESPONSE")), contains("\"status\":200"));
+        assertThat(loggingFilter.dumpFlightRecorder()).startsWith("[{").contains("\"body\":\"Test response body\"");
+    }
+
+    @Test
+    void testDoFilter_RecordedExchangeLoggedUnderSameId() throws Exception {
+
+        AtomicInteger createdRequests = new AtomicInteger();
+        LoggingFilter countingFilter = new LoggingFilter(LoggingFilter.Builder.create().flightRecorder(2).combinedExchange(true)) {
+            @Override
+            protected LoggingRequest createLoggingRequest(LoggingHttpServletRequestWrapper requestWrapper) {
+                createdRequests.incrementAndGet();
+                return super.createLoggingRequest(requestWrapper);
+            }
+        };
+        ReflectionTestUtils.setField(countingFilter, "log", logger);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        countingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        assertThat(createdRequests).hasValue(1);
+        String id = countingFilter.getFlightRecorder().snapshot().get(0).getId();
+        verify(logger).debug(eq(getMarker("EXCHANGE")), startsWith("EXCHANGE: {\"id\":\"" + id + "\",\"duration\":"));
+        verify(logger).debug(eq(getMarker("EXCHANGE")), contains("\"body\":\"Test request body\""));
+    }
+
+    @Test
+    void testDoFilter_FlightRecorderRecordsWithDebugDisabled() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("flightRecorderSize", "2");
+        filterConfig.addInitParameter("redactedHeaders", "Accept");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(false);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger, never()).debug(any(Marker.class), anyString());
+        assertThat(httpServletResponse.getContentAsString()).isEqualTo("Test response body");
+        assertThat(loggingFilter.dumpFlightRecorder())
+                .startsWith("[{\"id\":")
+                .contains("\"Accept\":\"[REDACTED]\"")
+                .contains("\"body\":\"Test request body\"")
+                .contains("\"status\":200")
+                .contains("\"body\":\"Test response body\"");
+    }
+
+    @Test
+    void testDoFilter_BodyDigest() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("bodyDigest", "SHA-256");
+        filterConfig.addInitParameter("maxContentSize", "4");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith(",\"body\":\"Test\",\"bodyHash\":\"SHA-256:36356d1307bf9af90b9d859f71f61e80f4f3a1fcf3f984bfb5d7f97bfb0561aa\",\"bodySize\":17}"));
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"Test\","
+                + "\"bodyHash\":\"SHA-256:f39dde19cb05c807a6a0fc0bc150bc08c4da2474ee22025b3499416d5d564d2d\",\"bodySize\":18}");
+    }
+
+    @Test
+    void testDoFilter_UnsupportedRequestEncoding() throws Exception {
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        httpServletRequest.setCharacterEncoding("x-no-such-charset");
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith(",\"body\":\"[UNSUPPORTED ENCODING]\"}"));
+    }
+
+    @Test
+    void testDoFilter_BodyDigestCoversBodyLeftPartlyUnread() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("bodyDigest", "SHA-256");
+        filterConfig.addInitParameter("maxContentSize", "4");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        FilterChain partialReader = (request, response) -> request.getInputStream().read(new byte[4]);
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, partialReader);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith(",\"bodyHash\":\"SHA-256:36356d1307bf9af90b9d859f71f61e80f4f3a1fcf3f984bfb5d7f97bfb0561aa\",\"bodySize\":17}"));
+    }
+
+    @Test
+    void testDoFilter_BodyDigestSkippedForRejectedRequest() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("bodyDigest", "SHA-256");
+        filterConfig.addInitParameter("maxContentSize", "4");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        FilterChain rejectingChain = (request, response) -> ((HttpServletResponse) response).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, rejectingChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith(",\"body\":\"Test\"}"));
+        assertThat(httpServletRequest.getInputStream().read(new byte[32])).isEqualTo(13);
+    }
+
+    @Test
+    void testDoFilter_BodyDigestSkippedForFormConsumedByContainer() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("bodyDigest", "SHA-256");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        MockHttpServletRequest formRequest = new MockHttpServletRequest("POST", "/form");
+        formRequest.setContentType("application/x-www-form-urlencoded");
+        formRequest.addParameter("card", "4111");
+        loggingFilter.doFilter(formRequest, httpServletResponse, filterChain);
+
+        verify(logger).debug(eq(getMarker("REQUEST")), endsWith(",\"body\":\"card=4111\"}"));
+    }
+
+    @Test
+    void testDoFilter_ForwardPassesThroughOuterCapture() throws Exception {
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+        when(logger.isTraceEnabled()).thenReturn(true);
+
+        FilterChain forwardingChain = (req, res) -> {
+            HttpServletRequest forwarded = new HttpServletRequestWrapper((HttpServletRequest) req) {
+                @Override
+                public DispatcherType getDispatcherType() {
+                    return DispatcherType.FORWARD;
+                }
+            };
+            loggingFilter.doFilter(forwarded, res, new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+        };
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, forwardingChain);
+
+        verify(logger).isDebugEnabled();
+        verify(logger).debug(eq(getMarker("REQUEST")), anyString());
+        verify(logger).debug(getMarker("RESPONSE"), "RESPONSE: {\"status\":200,\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"Test response body\"}");
+    }
+
+    @Test
+    void testDoFilter_ErrorDispatchAfterExchangeLoggedSeparately() throws Exception {
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+        httpServletRequest.setDispatcherType(DispatcherType.ERROR);
+        loggingFilter.doFilter(httpServletRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+        verify(logger, times(2)).debug(eq(getMarker("REQUEST")), anyString());
+        verify(logger, times(2)).debug(eq(getMarker("RESPONSE")), anyString());
+    }
+
+    @Test
+    void testDoFilter_NestedDispatchOfSkippedRequestNotReconsidered() throws Exception {
+
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("sampleRate", "0");
+        loggingFilter.init(filterConfig);
+
+        when(logger.isDebugEnabled()).thenReturn(true);
+
+        loggingFilter.doFilter(httpServletRequest, httpServletResponse, filterChain);
+        httpServletRequest.setDispatcherType(DispatcherType.ERROR);
+        loggingFilter.doFilter(httpServletRequest, new MockHttpServletResponse(), new MockFilterChain(new HttpRequestHandlerServlet(), new TestFilter()));
+
+        verify(logger).isDebugEnabled();
+        verify(logger, never()).debug(any(Marker.class), anyString());
+    }
+
     private static class TestFilter implements Filter {
 
         @Override
@@ -0,0 +1,89 @@
+package javax.servlet.filter.logging.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExchangeAggregatorTest {
+
+    private final List<ExchangeAggregate> aggregates = new ArrayList<>();
+
+    @Test
+    void aggregatesPerMethodRouteAndStatus() {
+
+        try (ExchangeAggregator aggregator = new ExchangeAggregator(1, TimeUnit.HOURS, aggregates::add)) {
+            aggregator.record("GET", "/health", 200, 1_000_000, -1, 20, false);
+            aggregator.record("GET", "/health", 200, 3_000_000, -1, 30, false);
+            aggregator.record("GET", "/health", 503, 5_000_000, -1, -1, true);
+            aggregator.flush();
+        }
+
+        assertThat(aggregates).hasSize(2);
+        ExchangeAggregate ok = aggregates.stream().filter(aggregate -> aggregate.getStatus() == 200).findFirst().get();
+        assertThat(ok.getCount()).isEqualTo(2);
+        assertThat(ok.getErrors()).isZero();
+        assertThat(ok.getMinDurationNanos()).isEqualTo(1_000_000);
+        assertThat(ok.getMeanDurationNanos()).isEqualTo(2_000_000);
+        assertThat(ok.getMaxDurationNanos()).isEqualTo(3_000_000);
+        assertThat(ok.getRequestBytes()).isZero();
+        assertThat(ok.getResponseBytes()).isEqualTo(50);
+        ExchangeAggregate failed = aggregates.stream().filter(aggregate -> aggregate.getStatus() == 503).findFirst().get();
+        assertThat(failed.getErrors()).isEqualTo(1);
+    }
+
+    @Test
+    void startsEveryWindowFromScratch() {
+
+        try (ExchangeAggregator aggregator = new ExchangeAggregator(1, TimeUnit.HOURS, aggregates::add)) {
+            aggregator.record("GET", "/health", 200, 1_000_000, -1, -1, false);
+            aggregator.flush();
+            aggregator.flush();
+            aggregator.record("GET", "/health", 200, 7_000_000, -1, -1, false);
+        }
+
+        assertThat(aggregates).hasSize(2);
+        assertThat(aggregates.get(1).getCount()).isEqualTo(1);
+        assertThat(aggregates.get(1).getMinDurationNanos()).isEqualTo(7_000_000);
+    }
+
+    @Test
+    void neverLosesExchangesRecordedDuringFlush() throws Exception {
+        int threads = 4;
+        int exchangesPerThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (ExchangeAggregator aggregator = new ExchangeAggregator(1, TimeUnit.HOURS, aggregates::add)) {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < exchangesPerThread; i++) {
+                        aggregator.record("GET", "/health", 200, 1_000, -1, -1, false);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            while (!writers.stream().allMatch(Future::isDone)) {
+                aggregator.flush();
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(aggregates.stream().mapToLong(ExchangeAggregate::getCount).sum()).isEqualTo((long) threads * exchangesPerThread);
+        assertThat(aggregates).allSatisfy(aggregate -> assertThat(aggregate.getMeanDurationNanos()).isEqualTo(1_000));
+    }
+}
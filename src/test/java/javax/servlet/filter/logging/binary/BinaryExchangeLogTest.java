@@ -0,0 +1,154 @@
+package javax.servlet.filter.logging.binary;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.servlet.filter.logging.entity.LoggingExchange;
+import javax.servlet.filter.logging.entity.LoggingRequest;
+import javax.servlet.filter.logging.entity.LoggingResponse;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryExchangeLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppend_ConvertedToJson() throws Exception {
+        try (BinaryExchangeLog binaryLog = new BinaryExchangeLog(directory, 4096, 0)) {
+            assertThat(binaryLog.append(exchange("/test", "Test request body"))).isTrue();
+            assertThat(binaryLog.getWrittenCount()).isEqualTo(1);
+        }
+
+        StringWriter out = new StringWriter();
+        long converted = new ExchangeLogConverter().convert(BinaryExchangeLog.listSegments(directory).get(0), out);
+
+        assertThat(converted).isEqualTo(1);
+        String[] lines = out.toString().split(System.lineSeparator());
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).endsWith(" REQUEST: {\"sender\":\"127.0.0.1\",\"method\":\"POST\",\"path\":\"/test\","
+                + "\"headers\":{\"Content-Type\":\"text/plain\",\"X-Id\":[\"é\",\"ü\"]},\"body\":\"Test request body\"}");
+        assertThat(lines[1]).endsWith(" RESPONSE: {\"status\":200,\"body\":\"Test response body\"}");
+    }
+
+    @Test
+    void testAppend_KeepsBodyDigest() throws Exception {
+        LoggingExchange exchange = exchange("/test", "Test");
+        exchange.getRequest().setBodyHash("XXH64:44bc2cf5ad770999");
+        exchange.getRequest().setBodySize(2048L);
+        try (BinaryExchangeLog binaryLog = new BinaryExchangeLog(directory, 4096, 0)) {
+            binaryLog.append(exchange);
+        }
+
+        StringWriter out = new StringWriter();
+        new ExchangeLogConverter().convert(BinaryExchangeLog.listSegments(directory).get(0), out);
+
+        String[] lines = out.toString().split(System.lineSeparator());
+        assertThat(lines[0]).endsWith(",\"body\":\"Test\",\"bodyHash\":\"XXH64:44bc2cf5ad770999\",\"bodySize\":2048}");
+        assertThat(lines[1]).endsWith(" RESPONSE: {\"status\":200,\"body\":\"Test response body\"}");
+    }
+
+    @Test
+    void testAppend_RollsAndDeletesOldestSegments() throws Exception {
+        try (BinaryExchangeLog binaryLog = new BinaryExchangeLog(directory, 256, 2)) {
+            for (int i = 0; i < 10; i++) {
+                binaryLog.append(exchange("/test/" + i, "Test request body"));
+            }
+            assertThat(binaryLog.append(exchange("/large", String.join("", Collections.nCopies(300, "x"))))).isFalse();
+            assertThat(binaryLog.getDroppedCount()).isEqualTo(1);
+            assertThat(binaryLog.getSegments()).hasSize(2);
+        }
+
+        assertThat(BinaryExchangeLog.listSegments(directory)).hasSize(2);
+        StringWriter out = new StringWriter();
+        ExchangeLogConverter converter = new ExchangeLogConverter();
+        for (Path segment : BinaryExchangeLog.listSegments(directory)) {
+            converter.convert(segment, out);
+        }
+        assertThat(out.toString()).contains("\"path\":\"/test/9\"").doesNotContain("\"path\":\"/test/0\"");
+    }
+
+    @Test
+    void testAppend_CarriesIdAndDuration() throws Exception {
+        LoggingExchange exchange = exchange("/test", "Test request body");
+        try (BinaryExchangeLog binaryLog = new BinaryExchangeLog(directory, 4096, 0)) {
+            binaryLog.append(new LoggingExchange("abc-1", 42, exchange.getRequest(), exchange.getResponse()), true);
+        }
+
+        StringWriter out = new StringWriter();
+        new ExchangeLogConverter().convert(BinaryExchangeLog.listSegments(directory).get(0), out);
+
+        String[] lines = out.toString().split(System.lineSeparator());
+        assertThat(lines).hasSize(1);
+        assertThat(lines[0]).contains(" EXCHANGE: {\"id\":\"abc-1\",\"duration\":42,\"request\":{");
+    }
+
+    @Test
+    void testAppend_NotCombinedConvertedToRequestAndResponse() throws Exception {
+        LoggingExchange exchange = exchange("/test", "Test request body");
+        try (BinaryExchangeLog binaryLog = new BinaryExchangeLog(directory, 4096, 0)) {
+            binaryLog.append(new LoggingExchange("abc-1", 42, exchange.getRequest(), exchange.getResponse()), false);
+        }
+
+        StringWriter out = new StringWriter();
+        new ExchangeLogConverter().convert(BinaryExchangeLog.listSegments(directory).get(0), out);
+
+        String[] lines = out.toString().split(System.lineSeparator());
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).contains(" REQUEST: {\"sender\":\"127.0.0.1\",\"method\":\"POST\",\"path\":\"/test\",");
+        assertThat(lines[1]).endsWith(" RESPONSE: {\"status\":200,\"body\":\"Test response body\"}");
+    }
+
+    @Test
+    void testAppend_DropsRecordsWhenSegmentCannotBeCreated() throws Exception {
+        Path logDirectory = directory.resolve("log");
+        try (BinaryExchangeLog binaryLog = new BinaryExchangeLog(logDirectory, 256, 0)) {
+            for (Path segment : BinaryExchangeLog.listSegments(logDirectory)) {
+                Files.delete(segment);
+            }
+            Files.delete(logDirectory);
+
+            for (int i = 0; i < 10; i++) {
+                binaryLog.append(exchange("/test/" + i, "Test request body"));
+            }
+
+            assertThat(binaryLog.getWrittenCount()).isPositive();
+            assertThat(binaryLog.getDroppedCount()).isPositive();
+            assertThat(binaryLog.getWrittenCount() + binaryLog.getDroppedCount()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void testOpen_ContinuesSequence() throws Exception {
+        new BinaryExchangeLog(directory, 4096, 0).close();
+        try (BinaryExchangeLog binaryLog = new BinaryExchangeLog(directory, 4096, 0)) {
+            assertThat(binaryLog.getSegments()).hasSize(2);
+        }
+    }
+
+    private static LoggingExchange exchange(String path, String body) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", singletonList("text/plain"));
+        headers.put("X-Id", asList("é", "ü"));
+        LoggingRequest request = new LoggingRequest();
+        request.setSender("127.0.0.1");
+        request.setMethod("POST");
+        request.setPath(path);
+        request.setHeaders(headers);
+        request.setBody(body);
+        LoggingResponse response = new LoggingResponse();
+        response.setStatus(200);
+        response.setBody("Test response body");
+        return new LoggingExchange(request, response);
+    }
+}
@@ -0,0 +1,63 @@
+package javax.servlet.filter.logging.digest;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BodyDigestTest {
+
+    @Test
+    void computesXxHash64() {
+
+        Supplier<BodyDigest> factory = BodyDigest.factory("xxhash64");
+
+        assertThat(digest(factory, "")).isEqualTo("XXH64:ef46db3751d8e999");
+        assertThat(digest(factory, "abc")).isEqualTo("XXH64:44bc2cf5ad770999");
+        assertThat(digest(factory, "Nobody inspects the spammish repetition")).isEqualTo("XXH64:fbcea83c8a378bf1");
+    }
+
+    @Test
+    void computesSameHashForAnySplitOfInput() {
+
+        byte[] body = new byte[1000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) (i * 31);
+        }
+        BodyDigest whole = BodyDigest.factory("XXH64").get();
+        whole.update(body, 0, body.length);
+
+        BodyDigest split = BodyDigest.factory("XXH64").get();
+        split.update(body[0]);
+        split.update(body, 1, 7);
+        split.update(body, 8, 45);
+        split.update(body, 53, body.length - 54);
+        split.update(body[body.length - 1]);
+
+        assertThat(split.getValue()).isEqualTo(whole.getValue());
+        assertThat(split.getSize()).isEqualTo(1000);
+    }
+
+    @Test
+    void computesMessageDigest() {
+
+        assertThat(digest(BodyDigest.factory("SHA-256"), "abc"))
+                .isEqualTo("SHA-256:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+
+    @Test
+    void rejectsUnknownAlgorithm() {
+
+        assertThatThrownBy(() -> BodyDigest.factory("NO-SUCH-HASH")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String digest(Supplier<BodyDigest> factory, String text) {
+        BodyDigest digest = factory.get();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        digest.update(bytes, 0, bytes.length);
+        return digest.getValue();
+    }
+}
@@ -0,0 +1,62 @@
+package javax.servlet.filter.logging.governor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OverloadGovernorTest {
+
+    private final AtomicReference<Double> queue = new AtomicReference<>(0.0);
+
+    private final AtomicReference<Double> heap = new AtomicReference<>(0.0);
+
+    private final OverloadGovernor governor = new OverloadGovernor(TimeUnit.MILLISECONDS.toNanos(1), 0.8, 0.9,
+            queue::get, heap::get, 0, 2);
+
+    @Test
+    void stepsDownWhileOverloaded() {
+
+        governor.recordOverhead(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.HEADERS);
+
+        queue.set(0.9);
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.SUMMARY);
+
+        heap.set(0.95);
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.OFF);
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.OFF);
+    }
+
+    @Test
+    void stepsUpOnceLoadEases() {
+
+        queue.set(0.9);
+        governor.getLevel();
+        governor.getLevel();
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.OFF);
+
+        queue.set(0.7);
+        governor.getLevel();
+        governor.getLevel();
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.OFF);
+
+        queue.set(0.1);
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.OFF);
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.SUMMARY);
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.SUMMARY);
+        assertThat(governor.getLevel()).isEqualTo(CaptureLevel.HEADERS);
+    }
+
+    @Test
+    void ignoresDisabledSignals() {
+
+        OverloadGovernor queueOnly = new OverloadGovernor(0, 0.8, 0, queue::get, heap::get, 0, 1);
+        queueOnly.recordOverhead(TimeUnit.SECONDS.toNanos(1));
+        heap.set(1.0);
+
+        assertThat(queueOnly.getLevel()).isEqualTo(CaptureLevel.FULL);
+    }
+}
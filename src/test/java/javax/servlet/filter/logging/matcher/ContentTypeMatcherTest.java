@@ -0,0 +1,56 @@
+package javax.servlet.filter.logging.matcher;
+
+import org.junit.jupiter.api.Test;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentTypeMatcherTest {
+
+    @Test
+    void testMatches_TextDefaults() {
+        ContentTypeMatcher matcher = ContentTypeMatcher.text();
+
+        assertThat(matcher.matches(null)).isTrue();
+        assertThat(matcher.matches("text/plain")).isTrue();
+        assertThat(matcher.matches("Application/JSON; charset=UTF-8")).isTrue();
+        assertThat(matcher.matches("application/problem+json")).isTrue();
+        assertThat(matcher.matches("application/atom+xml")).isTrue();
+        assertThat(matcher.matches("application/x-www-form-urlencoded")).isTrue();
+        assertThat(matcher.matches("multipart/form-data; boundary=x")).isFalse();
+        assertThat(matcher.matches("application/octet-stream")).isFalse();
+        assertThat(matcher.matches("application/x-protobuf")).isFalse();
+        assertThat(matcher.matches("image/png")).isFalse();
+    }
+
+    @Test
+    void testMatches_Exclusions() {
+        ContentTypeMatcher matcher = ContentTypeMatcher.compile(singletonList("*/*"), asList("image/*", "*/*+zip", "application/pdf"));
+
+        assertThat(matcher.matches("application/octet-stream")).isTrue();
+        assertThat(matcher.matches("image/svg+xml")).isFalse();
+        assertThat(matcher.matches("application/epub+zip")).isFalse();
+        assertThat(matcher.matches("application/pdf")).isFalse();
+    }
+
+    @Test
+    void testMatches_DeclaredLength() {
+        ContentTypeMatcher matcher = ContentTypeMatcher.compile(singletonList("text/*"), emptyList(), 1024);
+
+        assertThat(matcher.matches("text/plain", 1024)).isTrue();
+        assertThat(matcher.matches("text/plain", -1)).isTrue();
+        assertThat(matcher.matches("text/plain", 1025)).isFalse();
+        assertThat(matcher.matches(null, 1025)).isFalse();
+        assertThat(matcher.matches("image/png", 10)).isFalse();
+    }
+
+    @Test
+    void testMatches_EmptyIncludesAll() {
+        ContentTypeMatcher matcher = ContentTypeMatcher.compile(emptyList(), singletonList("video/*"));
+
+        assertThat(matcher.matches("application/x-protobuf")).isTrue();
+        assertThat(matcher.matches("video/mp4")).isFalse();
+    }
+}
@@ -0,0 +1,67 @@
+package javax.servlet.filter.logging.matcher;
+
+import org.junit.jupiter.api.Test;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathMatcherTest {
+
+    @Test
+    void testMatch_PlainPrefix() {
+        PathMatcher<String> matcher = PathMatcher.compile(asList("/api", "/admin"));
+
+        assertThat(matcher.match("/api")).isEqualTo("/api");
+        assertThat(matcher.match("/apiary")).isEqualTo("/api");
+        assertThat(matcher.match("/admin/users")).isEqualTo("/admin");
+        assertThat(matcher.match("/ap")).isNull();
+        assertThat(matcher.match("/static/app.js")).isNull();
+    }
+
+    @Test
+    void testMatch_ServletPatterns() {
+        PathMatcher<String> matcher = PathMatcher.compile(asList("/health/*", "*.css", "/api/*/status", "/static/*.js"));
+
+        assertThat(matcher.match("/health")).isEqualTo("/health/*");
+        assertThat(matcher.match("/health/live")).isEqualTo("/health/*");
+        assertThat(matcher.match("/healthz")).isNull();
+        assertThat(matcher.match("/theme/main.css")).isEqualTo("*.css");
+        assertThat(matcher.match("/theme/main.css/x")).isNull();
+        assertThat(matcher.match("/api/v1/status")).isEqualTo("/api/*/status");
+        assertThat(matcher.match("/api/v1/v2/status")).isNull();
+        assertThat(matcher.match("/static/app.js")).isEqualTo("/static/*.js");
+        assertThat(matcher.match("/static/app.json")).isNull();
+    }
+
+    @Test
+    void testMatch_LongestLiteralWins() {
+        PathMatcher<String> matcher = PathMatcher.compile(asList("/*", "/api/*", "/api/users/*"));
+
+        assertThat(matcher.match("/")).isEqualTo("/*");
+        assertThat(matcher.match("/api/orders")).isEqualTo("/api/*");
+        assertThat(matcher.match("/api/users/1")).isEqualTo("/api/users/*");
+    }
+
+    @Test
+    void testMatch_SeveralWildcardsInOneSegment() {
+        PathMatcher<String> matcher = PathMatcher.compile(asList("/files/*-*-*.log", "/files/*", "/api/*/users/*/orders"));
+        StringBuilder dashes = new StringBuilder("/files/");
+        for (int i = 0; i < 10_000; i++) {
+            dashes.append('-');
+        }
+
+        assertThat(matcher.match("/files/app-2021-01.log")).isEqualTo("/files/*-*-*.log");
+        assertThat(matcher.match("/files/app-2021.log")).isEqualTo("/files/*");
+        assertThat(matcher.match(dashes + ".txt")).isEqualTo("/files/*");
+        assertThat(matcher.match("/api/v1/users/42/orders")).isEqualTo("/api/*/users/*/orders");
+        assertThat(matcher.match("/api/v1/users/orders")).isNull();
+    }
+
+    @Test
+    void testMatch_Empty() {
+        PathMatcher<String> matcher = PathMatcher.empty();
+
+        assertThat(matcher.isEmpty()).isTrue();
+        assertThat(matcher.matches("/api")).isFalse();
+    }
+}
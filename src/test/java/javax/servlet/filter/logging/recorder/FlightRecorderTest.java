@@ -0,0 +1,51 @@
+package javax.servlet.filter.logging.recorder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlightRecorderTest {
+
+    @Test
+    void keepsMostRecentExchangesInOrder() {
+
+        FlightRecorder<String> recorder = new FlightRecorder<>(3);
+        assertThat(recorder.snapshot()).isEmpty();
+
+        for (int i = 1; i <= 5; i++) {
+            recorder.record("id-" + i);
+        }
+
+        assertThat(recorder.snapshot()).containsExactly("id-3", "id-4", "id-5");
+    }
+
+    @Test
+    void triggersOncePerBurst() {
+
+        FlightRecorder<String> recorder = new FlightRecorder<>(4, 2, 1, TimeUnit.HOURS);
+
+        assertThat(recorder.isBurstReached(200, false)).isFalse();
+        assertThat(recorder.isBurstReached(503, false)).isFalse();
+        assertThat(recorder.isBurstReached(200, true)).isTrue();
+        assertThat(recorder.isBurstReached(500, false)).isFalse();
+    }
+
+    @Test
+    void startsNewWindowAfterWindowPassed() {
+
+        FlightRecorder<String> recorder = new FlightRecorder<>(4, 2, 0, TimeUnit.MILLISECONDS);
+
+        assertThat(recorder.isBurstReached(500, false)).isFalse();
+        assertThat(recorder.isBurstReached(500, false)).isFalse();
+    }
+
+    @Test
+    void ignoresErrorsWithoutTrigger() {
+
+        FlightRecorder<String> recorder = new FlightRecorder<>(4);
+
+        assertThat(recorder.isBurstReached(500, true)).isFalse();
+    }
+}
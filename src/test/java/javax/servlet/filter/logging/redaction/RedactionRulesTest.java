@@ -0,0 +1,68 @@
+package javax.servlet.filter.logging.redaction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedactionRulesTest {
+
+    @Test
+    void testRedactBody_FieldAtAnyDepth() {
+        RedactionRules rules = RedactionRules.compile(emptyList(), emptyList(), asList("password", "token"));
+
+        assertThat(rules.redactBody("{\"user\":\"joe\",\"Password\":\"secret\",\"nested\":{\"token\":{\"a\":[1,2]},\"n\":1}}", false))
+                .isEqualTo("{\"user\":\"joe\",\"Password\":\"[REDACTED]\",\"nested\":{\"token\":\"[REDACTED]\",\"n\":1}}");
+        assertThat(rules.redactBody("[{\"token\": 42}, {\"token\" : null}]", false))
+                .isEqualTo("[{\"token\": \"[REDACTED]\"}, {\"token\" : \"[REDACTED]\"}]");
+        assertThat(rules.redactBody("{\"note\":\"password\",\"pass\\u0077ord\":\"x\"}", false))
+                .isEqualTo("{\"note\":\"password\",\"pass\\u0077ord\":\"[REDACTED]\"}");
+    }
+
+    @Test
+    void testRedactBody_AnchoredPaths() {
+        RedactionRules rules = RedactionRules.compile(emptyList(), emptyList(), asList("$.card.number", "items.*.ssn"));
+
+        assertThat(rules.redactBody("{\"card\":{\"number\":\"4111\",\"brand\":\"visa\"},\"other\":{\"number\":1}}", false))
+                .isEqualTo("{\"card\":{\"number\":\"[REDACTED]\",\"brand\":\"visa\"},\"other\":{\"number\":1}}");
+        assertThat(rules.redactBody("{\"items\":[{\"person\":{\"ssn\":\"1\",\"name\":\"a\"}},{\"x\":{\"ssn\":2}}],\"ssn\":3}", false))
+                .isEqualTo("{\"items\":[{\"person\":{\"ssn\":\"[REDACTED]\",\"name\":\"a\"}},{\"x\":{\"ssn\":\"[REDACTED]\"}}],\"ssn\":3}");
+    }
+
+    @Test
+    void testRedactBody_TruncatedAndNonJson() {
+        RedactionRules rules = RedactionRules.compile(emptyList(), singletonList("pin"), singletonList("password"));
+
+        assertThat(rules.redactBody("{\"user\":\"joe\",\"password\":\"sec", false)).isEqualTo("{\"user\":\"joe\",\"password\":\"[REDACTED]\"");
+        assertThat(rules.redactBody("password=secret", false)).isEqualTo("password=secret");
+        assertThat(rules.redactBody("card=1&PIN=1234&x=1", true)).isEqualTo("card=1&PIN=[REDACTED]&x=1");
+    }
+
+    @Test
+    void testRedactBody_EncodedFormNames() {
+        RedactionRules rules = RedactionRules.compile(emptyList(), asList("card[number]", "pin code"), emptyList());
+
+        assertThat(rules.redactBody("card%5Bnumber%5D=4111&card%5bbrand%5d=visa", true))
+                .isEqualTo("card%5Bnumber%5D=[REDACTED]&card%5bbrand%5d=visa");
+        assertThat(rules.redactBody("pin+code=1234&pin%20code=5678&card%5=x", true))
+                .isEqualTo("pin+code=[REDACTED]&pin%20code=[REDACTED]&card%5=x");
+    }
+
+    @Test
+    void testRedactHeaders() {
+        RedactionRules rules = RedactionRules.compile(RedactionRules.DEFAULT_HEADERS, emptyList(), emptyList());
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("authorization", singletonList("Bearer x"));
+        headers.put("Accept", singletonList("*/*"));
+
+        assertThat(rules.redactHeaders(headers)).containsEntry("authorization", singletonList("[REDACTED]")).containsEntry("Accept", singletonList("*/*"));
+        assertThat(rules.isRedactedHeader("COOKIE")).isTrue();
+        assertThat(RedactionRules.none().isRedactedHeader("Cookie")).isFalse();
+    }
+}
@@ -0,0 +1,49 @@
+package javax.servlet.filter.logging.sampling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestSamplerTest {
+
+    @Test
+    void limitsEveryRouteOnItsOwn() {
+
+        RequestSampler sampler = RequestSampler.create(1.0, 1, emptyMap());
+
+        assertThat(sampler.sample("/busy/1", "/busy/*")).isTrue();
+        assertThat(sampler.sample("/busy/2", "/busy/*")).isFalse();
+        assertThat(sampler.sample("/quiet", "/quiet")).isTrue();
+    }
+
+    @Test
+    void routeLimitTakesPrecedence() {
+
+        RequestSampler sampler = RequestSampler.create(1.0, 1, singletonMap("/health", 0));
+
+        assertThat(sampler.sample("/health", "/health")).isFalse();
+        assertThat(sampler.sample("/api", "/api")).isTrue();
+    }
+
+    @Test
+    void keepsBucketsWhenSettingsAreUnchanged() {
+
+        Map<String, Integer> routeLimits = new LinkedHashMap<>();
+        routeLimits.put("/api/*", 1);
+        RequestSampler sampler = RequestSampler.create(1.0, 1, routeLimits);
+        assertThat(sampler.sample("/api/users", "/api/*")).isTrue();
+
+        RequestSampler unchanged = RequestSampler.create(1.0, 1, new LinkedHashMap<>(routeLimits), sampler);
+        RequestSampler changed = RequestSampler.create(1.0, 2, routeLimits, sampler);
+
+        assertThat(unchanged).isSameAs(sampler);
+        assertThat(unchanged.sample("/api/users", "/api/*")).isFalse();
+        assertThat(changed).isNotSameAs(sampler);
+        assertThat(changed.sample("/api/users", "/api/*")).isTrue();
+    }
+}
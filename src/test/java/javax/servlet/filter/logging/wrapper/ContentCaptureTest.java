@@ -0,0 +1,192 @@
+package javax.servlet.filter.logging.wrapper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentCaptureTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ignoresWritesAfterReleaseWhileBufferIsLeasedAgain() throws Exception {
+
+        CaptureBufferPool pool = new CaptureBufferPool(1, 64, false);
+        ContentCapture released = new ContentCapture(64, pool);
+        released.write('a');
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (writing.get()) {
+                released.write('a');
+                released.reset();
+            }
+        });
+        writer.start();
+        try {
+            released.release();
+            ContentCapture leased = new ContentCapture(64, pool);
+            for (int i = 0; i < 1000; i++) {
+                leased.reset();
+                leased.write("bbbb".getBytes(StandardCharsets.UTF_8), 0, 4);
+                assertThat(leased.toString(StandardCharsets.UTF_8)).isEqualTo("bbbb");
+            }
+            leased.release();
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+
+        assertThat(pool.getHitCount()).isEqualTo(1);
+        assertThat(pool.getAvailableCount()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsSmallCaptureInMemory() throws Exception {
+
+        ContentCapture capture = new ContentCapture(Integer.MAX_VALUE, null, SpillPolicy.of(16, directory));
+        capture.write("small".getBytes(StandardCharsets.UTF_8), 0, 5);
+
+        assertThat(capture.isSpilled()).isFalse();
+        assertThat(capture.toString(StandardCharsets.UTF_8)).isEqualTo("small");
+        assertThat(listFiles()).isEmpty();
+    }
+
+    @Test
+    void spillsPastThresholdAndDeletesFileOnRelease() throws Exception {
+
+        ContentCapture capture = new ContentCapture(Integer.MAX_VALUE, null, SpillPolicy.of(4, directory));
+        capture.write("abc".getBytes(StandardCharsets.UTF_8), 0, 3);
+        capture.write('d');
+        capture.write('e');
+        capture.write("fghij".getBytes(StandardCharsets.UTF_8), 0, 5);
+
+        assertThat(capture.isSpilled()).isTrue();
+        assertThat(capture.size()).isEqualTo(10);
+        assertThat(capture.toString(StandardCharsets.UTF_8)).isEqualTo("abcdefghij");
+
+        capture.release();
+
+        assertThat(capture.isSpilled()).isFalse();
+        assertThat(listFiles()).isEmpty();
+    }
+
+    @Test
+    void stagesSpilledWritesUntilRead() throws Exception {
+
+        ContentCapture capture = new ContentCapture(Integer.MAX_VALUE, null, SpillPolicy.of(4, directory));
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40_000; i++) {
+            char c = (char) ('a' + i % 26);
+            capture.write(c);
+            expected.append(c);
+        }
+        capture.write("tail".getBytes(StandardCharsets.UTF_8), 0, 4);
+        expected.append("tail");
+
+        assertThat(capture.isSpilled()).isTrue();
+        assertThat(capture.size()).isEqualTo(expected.length());
+        assertThat(capture.toString(StandardCharsets.UTF_8)).isEqualTo(expected.toString());
+
+        capture.write('!');
+
+        assertThat(capture.toString(StandardCharsets.UTF_8)).endsWith("tail!");
+        capture.release();
+        assertThat(listFiles()).isEmpty();
+    }
+
+    @Test
+    void dropsSpilledCaptureWhenFileCannotBeWritten() throws Exception {
+
+        ContentCapture capture = new ContentCapture(Integer.MAX_VALUE, null, SpillPolicy.of(4, directory));
+        capture.write("abcde".getBytes(StandardCharsets.UTF_8), 0, 5);
+        ((FileChannel) ReflectionTestUtils.getField(capture, "channel")).close();
+
+        capture.write('f');
+        capture.write("ghij".getBytes(StandardCharsets.UTF_8), 0, 4);
+        capture.write(new byte[20_000], 0, 20_000);
+
+        assertThat(capture.isLost()).isTrue();
+        assertThat(capture.isSpilled()).isFalse();
+        assertThat(capture.total()).isEqualTo(20_010);
+        assertThat(capture.toString(StandardCharsets.UTF_8)).isEmpty();
+        assertThat(listFiles()).isEmpty();
+    }
+
+    @Test
+    void decodesInPartsAcrossMultiByteCharacters() throws Exception {
+
+        String text = "žluťoučký kůň úpěl ďábelské ódy";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ContentCapture capture = new ContentCapture(Integer.MAX_VALUE, null, SpillPolicy.of(8, directory));
+        capture.write(bytes, 0, bytes.length);
+
+        List<String> parts = new ArrayList<>();
+        capture.decode(StandardCharsets.UTF_8, 5, parts::add);
+
+        assertThat(parts).hasSize(7).allMatch(part -> part.length() <= 5);
+        assertThat(String.join("", parts)).isEqualTo(text);
+        capture.release();
+    }
+
+    @Test
+    void ignoresPolicyForLimitsBelowThreshold() throws Exception {
+
+        ContentCapture capture = new ContentCapture(8, null, SpillPolicy.of(16, directory));
+        capture.write("more than eight bytes".getBytes(StandardCharsets.UTF_8), 0, 21);
+
+        assertThat(capture.isSpilled()).isFalse();
+        assertThat(capture.toString(StandardCharsets.UTF_8)).isEqualTo("more tha");
+        assertThat(capture.total()).isEqualTo(21);
+    }
+
+    @Test
+    void leavesOutMultiByteCharacterCutByLimit() {
+
+        byte[] bytes = "abč".getBytes(StandardCharsets.UTF_8);
+        ContentCapture capture = new ContentCapture(3, null);
+        capture.write(bytes, 0, bytes.length);
+
+        assertThat(capture.toString(StandardCharsets.UTF_8)).isEqualTo("ab");
+    }
+
+    @Test
+    void replacesMalformedInputOfCompleteCapture() {
+
+        ContentCapture capture = new ContentCapture(8, null);
+        capture.write(new byte[]{'a', 'b', (byte) 0xC4}, 0, 3);
+
+        assertThat(capture.toString(StandardCharsets.UTF_8)).isEqualTo("ab\uFFFD");
+    }
+
+    @Test
+    void decodesOnlyRequestedCharacters() {
+
+        byte[] bytes = "čeština".getBytes(StandardCharsets.UTF_8);
+        ContentCapture capture = new ContentCapture(Integer.MAX_VALUE, null);
+        capture.write(bytes, 0, bytes.length);
+
+        assertThat(capture.toString(StandardCharsets.UTF_8, 3)).isEqualTo("češ");
+        assertThat(capture.toString(StandardCharsets.UTF_16BE, 2)).hasSize(2);
+        assertThat(capture.toString(StandardCharsets.UTF_8)).isEqualTo("čeština");
+    }
+
+    private List<Path> listFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> list = new ArrayList<>();
+            files.forEach(list::add);
+            return list;
+        }
+    }
+}